@@ -0,0 +1,135 @@
+package uk.q3c.krail.benchmarks.navigate;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.q3c.krail.core.navigate.AfterInboundNavigation;
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata;
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata.CallbackLevel;
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata.CallbackMethod;
+
+/**
+ * Cost of calling the navigation callbacks of a view with a deep hierarchy
+ * (one {@link AfterInboundNavigation} per level, {@value #LEVELS} levels):
+ * reflective dispatch against the cached method handles of
+ * {@link CallbackMethod}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackDispatchBenchmark {
+
+	static final int LEVELS = 8;
+
+	public static class Level0 extends SyntheticView {
+		int calls;
+
+		@AfterInboundNavigation
+		private void after0(String value) {
+			calls += value.length();
+		}
+	}
+
+	public static class Level1 extends Level0 {
+		@AfterInboundNavigation
+		protected void after1(String value) {
+			calls += value.length();
+		}
+	}
+
+	public static class Level2 extends Level1 {
+		@AfterInboundNavigation
+		void after2(String value) {
+			calls += value.length();
+		}
+	}
+
+	public static class Level3 extends Level2 {
+		@AfterInboundNavigation
+		public void after3(String value) {
+			calls += value.length();
+		}
+	}
+
+	public static class Level4 extends Level3 {
+		@AfterInboundNavigation
+		private void after4(String value) {
+			calls += value.length();
+		}
+	}
+
+	public static class Level5 extends Level4 {
+		@AfterInboundNavigation
+		protected void after5(String value) {
+			calls += value.length();
+		}
+	}
+
+	public static class Level6 extends Level5 {
+		@AfterInboundNavigation
+		void after6(String value) {
+			calls += value.length();
+		}
+	}
+
+	public static class CallbackView extends Level6 {
+		@AfterInboundNavigation
+		public void after7(String value) {
+			calls += value.length();
+		}
+	}
+
+	private CallbackView view;
+	private Method[] methods;
+	private CallbackMethod[] callbacks;
+	private Object[] args;
+
+	@Setup
+	public void setUp() {
+		view = new CallbackView();
+		List<CallbackLevel> levels = NavigationCallbackMetadata.of(CallbackView.class)
+				.getCallbacks(AfterInboundNavigation.class);
+		if (levels.size() != LEVELS) {
+			throw new IllegalStateException("expected " + LEVELS + " levels, found " + levels.size());
+		}
+		methods = new Method[LEVELS];
+		callbacks = new CallbackMethod[LEVELS];
+		for (int i = 0; i < LEVELS; i++) {
+			callbacks[i] = levels.get(i).getAlternatives().get(0);
+			// made accessible by the metadata
+			methods[i] = callbacks[i].getMethod();
+		}
+		args = new Object[] { "value" };
+	}
+
+	@Benchmark
+	public int reflective() throws Exception {
+		for (Method method : methods) {
+			method.invoke(view, args);
+		}
+		return view.calls;
+	}
+
+	@Benchmark
+	public int methodHandle() throws Throwable {
+		for (CallbackMethod callback : callbacks) {
+			callback.invoke(view, args);
+		}
+		return view.calls;
+	}
+}
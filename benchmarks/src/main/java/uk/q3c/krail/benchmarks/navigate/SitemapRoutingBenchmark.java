@@ -0,0 +1,84 @@
+package uk.q3c.krail.benchmarks.navigate;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+import uk.q3c.krail.core.navigate.sitemap.impl.ParametersImpl;
+
+/**
+ * Cost of the routing path executed on every navigation, for sitemaps of
+ * different sizes. Every invocation works on the next node of the sitemap, so
+ * the results are an average over all the kinds of uri patterns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SitemapRoutingBenchmark {
+
+	@Param({ "10", "100", "1000", "10000" })
+	private int size;
+
+	private SyntheticSitemap sitemap;
+	private NavigationState[] states;
+	private NavigationState[] equalStates;
+	private int cursor;
+
+	@Setup
+	public void setUp() {
+		sitemap = new SyntheticSitemap(size);
+		states = sitemap.resolveAll();
+		equalStates = new NavigationState[states.length];
+		for (int i = 0; i < states.length; i++) {
+			// share the parameters, values are compared by instance
+			equalStates[i] = sitemap.getSitemap().buildNavigationStateFor(states[i].getSitemapNode(),
+					states[i].parameters());
+		}
+	}
+
+	private int next() {
+		int index = cursor;
+		cursor = index + 1 == states.length ? 0 : index + 1;
+		return index;
+	}
+
+	@Benchmark
+	public NavigationState fragmentToState() {
+		return sitemap.getSitemap().buildNavigationStateFor(sitemap.getFragment(next()));
+	}
+
+	@Benchmark
+	public String stateToFragment() {
+		return states[next()].getFragment();
+	}
+
+	@Benchmark
+	public boolean stateEquals() {
+		int index = next();
+		return states[index].equals(equalStates[index]);
+	}
+
+	@Benchmark
+	public int stateHashCode() {
+		return states[next()].hashCode();
+	}
+
+	@Benchmark
+	public ParametersImpl newParameters() {
+		return new ParametersImpl(sitemap.getNode(next()).getViewClass());
+	}
+}
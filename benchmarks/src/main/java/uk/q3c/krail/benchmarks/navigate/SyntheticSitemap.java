@@ -0,0 +1,137 @@
+package uk.q3c.krail.benchmarks.navigate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+import uk.q3c.krail.core.navigate.sitemap.DefaultSitemap;
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+import uk.q3c.krail.core.view.DefaultViewFactory;
+import uk.q3c.krail.core.view.KrailView;
+
+/**
+ * A sitemap of a given size with a mix of static, parameterised and optional
+ * group uri patterns, together with a fragment matching every node.
+ */
+public class SyntheticSitemap {
+
+	/**
+	 * The benchmarks never build views, this avoids to set up an injector and a
+	 * UIScope (nor the view cache and the prefetcher of the UI)
+	 */
+	private static class NoViewFactory extends DefaultViewFactory {
+
+		NoViewFactory() {
+			super(null, null, null);
+		}
+
+		@Override
+		public <T extends KrailView> T get(Class<T> viewClass) {
+			return null;
+		}
+
+		@Override
+		public KrailView get(NavigationState navigationState) {
+			return null;
+		}
+	}
+
+	private static class ViewClassLoader extends ClassLoader {
+
+		ViewClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+
+	private final DefaultSitemap sitemap;
+	private final List<SitemapNode> nodes = new ArrayList<>();
+	private final List<String> fragments = new ArrayList<>();
+
+	public SyntheticSitemap(int size) {
+		this.sitemap = new DefaultSitemap(new NoViewFactory());
+		List<Class<? extends KrailView>> views = generateViewClasses(size);
+		for (int i = 0; i < size; i++) {
+			String section = "section" + (i % 16);
+			String pattern;
+			String fragment;
+			switch (i % 4) {
+			case 0:
+				pattern = section + "/page" + i;
+				fragment = pattern;
+				break;
+			case 1:
+				pattern = section + "/item" + i + "/{id:\\d+}";
+				fragment = section + "/item" + i + "/" + (1000 + i);
+				break;
+			case 2:
+				pattern = section + "/list" + i + "[/{page:\\d+}[/{sort}]]";
+				fragment = section + "/list" + i + "/" + (i % 10) + "/name";
+				break;
+			default:
+				pattern = section + "/{category}/detail" + i + "[/{tab}]";
+				fragment = section + "/books/detail" + i;
+				break;
+			}
+			nodes.add(sitemap.addView(pattern, views.get(i)));
+			fragments.add(fragment);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Class<? extends KrailView>> generateViewClasses(int count) {
+		try {
+			ClassPool pool = new ClassPool(true);
+			pool.appendClassPath(new LoaderClassPath(SyntheticView.class.getClassLoader()));
+			CtClass superclass = pool.get(SyntheticView.class.getName());
+			ViewClassLoader loader = new ViewClassLoader(SyntheticView.class.getClassLoader());
+
+			List<Class<? extends KrailView>> classes = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				String name = SyntheticView.class.getName() + "$" + i;
+				CtClass view = pool.makeClass(name, superclass);
+				classes.add((Class<? extends KrailView>) loader.define(name, view.toBytecode()));
+				view.detach();
+			}
+			return classes;
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to generate the synthetic view classes", e);
+		}
+	}
+
+	public DefaultSitemap getSitemap() {
+		return sitemap;
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	public SitemapNode getNode(int index) {
+		return nodes.get(index);
+	}
+
+	/**
+	 * A fragment matching the node at the same index
+	 */
+	public String getFragment(int index) {
+		return fragments.get(index);
+	}
+
+	/**
+	 * The states built resolving every fragment, in node order
+	 */
+	public NavigationState[] resolveAll() {
+		NavigationState[] states = new NavigationState[fragments.size()];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = sitemap.buildNavigationStateFor(fragments.get(i));
+		}
+		return states;
+	}
+}
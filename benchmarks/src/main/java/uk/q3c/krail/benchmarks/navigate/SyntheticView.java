@@ -0,0 +1,16 @@
+package uk.q3c.krail.benchmarks.navigate;
+
+import uk.q3c.krail.core.view.KrailView;
+
+/**
+ * Base class of the views generated by {@link SyntheticSitemap}: the sitemap
+ * requires a distinct view class for every node, the benchmarks never
+ * instantiate them.
+ */
+public abstract class SyntheticView implements KrailView {
+
+	@Override
+	public ViewTitleComponent getTitleComponet() {
+		return null;
+	}
+}
@@ -0,0 +1,139 @@
+package uk.q3c.krail.benchmarks.scope;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.name.Names;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.UI;
+import com.vaadin.util.CurrentInstance;
+
+import uk.q3c.krail.core.guice.uiscope.UIKey;
+import uk.q3c.krail.core.guice.uiscope.UIScope;
+import uk.q3c.krail.core.ui.ScopedUI;
+
+/**
+ * Cost of the lookup of a UI scoped instance that already exists, the path
+ * executed for every injection of a UIScoped dependency. Every thread plays a
+ * different UI, on a scope that also holds <code>uis</code> other UIs: the
+ * current UI of the request (<code>currentUI</code>), or only its UIKey held in
+ * {@link CurrentInstance}, as while the UI is created.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UIScopeBenchmark {
+
+	static final int KEYS = 16;
+
+	private static final AtomicLong uiCounter = new AtomicLong();
+
+	/**
+	 * Never attached nor initialised, only its key is used
+	 */
+	private static class BenchmarkUI extends ScopedUI {
+
+		BenchmarkUI(UIKey uiKey) {
+			setInstanceKey(uiKey);
+		}
+
+		@Override
+		protected Component screenLayout() {
+			return null;
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class ScopeState {
+
+		@Param({ "1000" })
+		int uis;
+
+		UIScope scope;
+		Provider<?>[] providers;
+
+		@Setup
+		public void setUp() {
+			scope = new UIScope();
+			for (int i = 0; i < uis; i++) {
+				scope.startScope(new UIKey(uiCounter.incrementAndGet()));
+			}
+			providers = new Provider<?>[KEYS];
+			for (int i = 0; i < KEYS; i++) {
+				providers[i] = scope.scope(Key.get(Object.class, Names.named("key" + i)), Object::new);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class UIState {
+
+		@Param({ "true", "false" })
+		boolean currentUI;
+
+		int cursor;
+
+		/**
+		 * Runs on the benchmark thread, CurrentInstance is thread local
+		 */
+		@Setup(Level.Trial)
+		public void setUp(ScopeState scopeState) {
+			UIKey uiKey = new UIKey(uiCounter.incrementAndGet());
+			scopeState.scope.startScope(uiKey);
+			if (currentUI) {
+				UI.setCurrent(new BenchmarkUI(uiKey));
+			} else {
+				CurrentInstance.set(UIKey.class, uiKey);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			UI.setCurrent(null);
+			CurrentInstance.set(UIKey.class, null);
+		}
+	}
+
+	private static Object get(ScopeState scopeState, UIState uiState) {
+		int index = uiState.cursor;
+		uiState.cursor = index + 1 == KEYS ? 0 : index + 1;
+		return scopeState.providers[index].get();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object get1Thread(ScopeState scopeState, UIState uiState) {
+		return get(scopeState, uiState);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Object get8Threads(ScopeState scopeState, UIState uiState) {
+		return get(scopeState, uiState);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public Object get64Threads(ScopeState scopeState, UIState uiState) {
+		return get(scopeState, uiState);
+	}
+}
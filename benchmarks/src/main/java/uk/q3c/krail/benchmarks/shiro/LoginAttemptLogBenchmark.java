@@ -0,0 +1,118 @@
+package uk.q3c.krail.benchmarks.shiro;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.shiro.authc.ExcessiveAttemptsException;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.q3c.krail.core.shiro.DefaultLoginAttemptLog;
+import uk.q3c.krail.core.shiro.FileLoginAttemptLog;
+import uk.q3c.krail.core.shiro.LoginAttemptLog;
+
+/**
+ * Throughput of the login attempt log under a credential stuffing burst: many
+ * threads recording attempts for <code>users</code> usernames, one success every
+ * ten attempts. The target is well above 10,000 attempts per second.<br>
+ * <code>store</code> compares the in memory log with the persistent one, in a
+ * temporary directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginAttemptLogBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class LogState {
+
+		@Param({ "100", "100000" })
+		int users;
+
+		@Param({ "memory", "file" })
+		String store;
+
+		LoginAttemptLog log;
+		UsernamePasswordToken[] tokens;
+		Path directory;
+
+		@Setup
+		public void setUp() throws IOException {
+			if ("file".equals(store)) {
+				directory = Files.createTempDirectory("krail-login-attempts");
+				log = new FileLoginAttemptLog(directory, FileLoginAttemptLog.DEFAULT_SEGMENT_SIZE,
+						FileLoginAttemptLog.DEFAULT_FLUSH_INTERVAL_MILLIS,
+						FileLoginAttemptLog.DEFAULT_SEGMENTS_BEFORE_COMPACTION);
+			} else {
+				log = new DefaultLoginAttemptLog();
+			}
+			log.setMaximumAttempts(5);
+			tokens = new UsernamePasswordToken[users];
+			for (int i = 0; i < users; i++) {
+				tokens[i] = new UsernamePasswordToken("user" + i, "password");
+			}
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			if (directory != null) {
+				((FileLoginAttemptLog) log).close();
+				try (Stream<Path> files = Files.walk(directory)) {
+					files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int attempt1Thread(LogState state) {
+		return attempt(state);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public int attempt16Threads(LogState state) {
+		return attempt(state);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public int attempt64Threads(LogState state) {
+		return attempt(state);
+	}
+
+	private static int attempt(LogState state) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		UsernamePasswordToken token = state.tokens[random.nextInt(state.users)];
+		if (random.nextInt(10) == 0) {
+			state.log.recordSuccessfulAttempt(token);
+		} else {
+			try {
+				state.log.recordFailedAttempt(token);
+			} catch (ExcessiveAttemptsException e) {
+				// locked out, as expected in a burst
+			}
+		}
+		return state.log.attemptsRemaining(token.getUsername());
+	}
+}
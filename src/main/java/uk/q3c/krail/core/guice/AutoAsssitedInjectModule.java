@@ -9,25 +9,32 @@ import org.slf4j.LoggerFactory;
 import com.google.inject.AbstractModule;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
 
+import uk.q3c.krail.core.guice.index.AnnotatedTypeIndex;
+import uk.q3c.krail.core.guice.index.ReflectionsTypeIndex;
+
 public class AutoAsssitedInjectModule extends AbstractModule {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(AutoAsssitedInjectModule.class);
 
-	private final Reflections basePackageReflections;
+	private final AnnotatedTypeIndex typeIndex;
 
 	public AutoAsssitedInjectModule(String basePackage) {
-		this(new Reflections(basePackage));
+		this(AnnotatedTypeIndex.forBasePackage(basePackage));
 	}
 
 	public AutoAsssitedInjectModule(Reflections basePackageReflections) {
-		this.basePackageReflections = basePackageReflections;
+		this(new ReflectionsTypeIndex(basePackageReflections));
+	}
+
+	public AutoAsssitedInjectModule(AnnotatedTypeIndex typeIndex) {
+		this.typeIndex = typeIndex;
 	}
 
 	@Override
 	protected void configure() {
 		super.configure();
 
-		Set<Class<?>> autoFactoryTypes = basePackageReflections.getTypesAnnotatedWith(AutoFactory.class);
+		Set<Class<?>> autoFactoryTypes = typeIndex.getTypesAnnotatedWith(AutoFactory.class);
 		if (!autoFactoryTypes.isEmpty()) {
 			if (LOGGER.isDebugEnabled()) {
 				LOGGER.warn("binding {} interfaces as factory with AssistedInject: {}", autoFactoryTypes.size(),
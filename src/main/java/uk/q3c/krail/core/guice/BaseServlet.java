@@ -12,6 +12,8 @@
  */
 package uk.q3c.krail.core.guice;
 
+import uk.q3c.krail.core.guice.uiscope.UIScope;
+import uk.q3c.krail.core.guice.vsscope.VaadinSessionScope;
 import uk.q3c.krail.core.ui.ScopedUIProvider;
 
 import java.util.List;
@@ -25,6 +27,8 @@ import com.vaadin.server.CustomizedSystemMessages;
 import com.vaadin.server.DeploymentConfiguration;
 import com.vaadin.server.RequestHandler;
 import com.vaadin.server.ServiceException;
+import com.vaadin.server.SessionDestroyEvent;
+import com.vaadin.server.SessionDestroyListener;
 import com.vaadin.server.SessionInitEvent;
 import com.vaadin.server.SessionInitListener;
 import com.vaadin.server.SystemMessages;
@@ -38,7 +42,7 @@ import com.vaadin.server.VaadinServletService;
 import com.vaadin.server.VaadinSession;
 
 @Singleton
-public class BaseServlet extends VaadinServlet implements SessionInitListener {
+public class BaseServlet extends VaadinServlet implements SessionInitListener, SessionDestroyListener {
 
 	private static final long serialVersionUID = 4490881052475037408L;
 
@@ -57,6 +61,7 @@ public class BaseServlet extends VaadinServlet implements SessionInitListener {
 	protected void servletInitialized() throws ServletException {
 		super.servletInitialized();
 		getService().addSessionInitListener(this);
+		getService().addSessionDestroyListener(this);
 		getService().setSystemMessagesProvider(new SystemMessagesProvider() {
 
 			@Override
@@ -75,6 +80,16 @@ public class BaseServlet extends VaadinServlet implements SessionInitListener {
 		event.getSession().addUIProvider(uiProvider);
 	}
 
+	/**
+	 * Releases the VaadinSession scope and the UI scopes of the session, also of
+	 * the UIs that have not been detached
+	 */
+	@Override
+	public void sessionDestroy(SessionDestroyEvent event) {
+		UIScope.getCurrent().releaseScopes(event.getSession());
+		VaadinSessionScope.getCurrent().releaseScope(event.getSession());
+	}
+
 	@Override
 	protected VaadinServletService createServletService(DeploymentConfiguration deploymentConfiguration)
 			throws ServiceException {
@@ -103,6 +118,7 @@ public class BaseServlet extends VaadinServlet implements SessionInitListener {
 					handler.requestEnd(request, response, session);
 				}
 				super.requestEnd(request, response, session);
+				UIScope.getCurrent().sweepIfDue();
 			}
 
 			@Override
@@ -23,15 +23,13 @@ import javax.servlet.ServletContextEvent;
 import org.apache.shiro.guice.ShiroModule;
 import org.apache.shiro.guice.aop.ShiroAopModule;
 import org.reflections.Reflections;
-import org.reflections.scanners.MethodAnnotationsScanner;
-import org.reflections.scanners.Scanner;
-import org.reflections.scanners.SubTypesScanner;
-import org.reflections.scanners.TypeAnnotationsScanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import uk.q3c.krail.core.guice.errors.ErrorModule;
+import uk.q3c.krail.core.guice.index.AnnotatedTypeIndex;
+import uk.q3c.krail.core.guice.index.SharedClasspathIndex;
 import uk.q3c.krail.core.guice.threadscope.ThreadScopeModule;
 import uk.q3c.krail.core.guice.uiscope.UIScopeModule;
 import uk.q3c.krail.core.guice.vsscope.VaadinSessionScopeModule;
@@ -59,7 +57,7 @@ public abstract class DefaultBindingManager extends GuiceServletContextListener
 	private static Logger log = LoggerFactory.getLogger(DefaultBindingManager.class);
 
 	private String basePackage = "";
-	private Reflections basePackageReflections;
+	private AnnotatedTypeIndex basePackageIndex;
 
 	private ServiceManagerModule servicesModule;
 	private I18NModule i18NModule;
@@ -149,10 +147,10 @@ public abstract class DefaultBindingManager extends GuiceServletContextListener
 		coreModules.addAll(appModules);
 
 		if (automaticStaticInjection) {
-			coreModules.add(new StaticInjectionModule(getBasePackageReflections()));
+			coreModules.add(new StaticInjectionModule(getBasePackageIndex()));
 		}
 		if (automaticFactoryBinging) {
-			coreModules.add(new AutoAsssitedInjectModule(getBasePackageReflections()));
+			coreModules.add(new AutoAsssitedInjectModule(getBasePackageIndex()));
 		}
 
 		// bind after appModules to allow other servlets
@@ -176,12 +174,29 @@ public abstract class DefaultBindingManager extends GuiceServletContextListener
 		return basePackage;
 	}
 
+	/**
+	 * @deprecated the annotated types should be obtained from
+	 *             {@link #getBasePackageIndex()}, that doesn't need to scan the
+	 *             classpath when the index has been generated at compile time
+	 */
+	@Deprecated
 	public Reflections getBasePackageReflections() {
-		if (basePackageReflections == null) {
-			basePackageReflections = new Reflections(basePackage, new Scanner[] { new TypeAnnotationsScanner(),
-					new SubTypesScanner(), new MethodAnnotationsScanner() });
+		return SharedClasspathIndex.getReflections(basePackage);
+	}
+
+	/**
+	 * The annotated types of the base package, read from the index generated at
+	 * compile time if present, otherwise from a scan of the base package. The
+	 * same instance is shared by all the modules.
+	 */
+	public AnnotatedTypeIndex getBasePackageIndex() {
+		if (basePackageIndex == null) {
+			long start = System.nanoTime();
+			basePackageIndex = SharedClasspathIndex.getIndex(basePackage);
+			log.info("annotated types of '{}' ready in {} ms", basePackage,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 		}
-		return basePackageReflections;
+		return basePackageIndex;
 	}
 
 	public void setBasePackage(String basePackage) {
@@ -251,7 +266,7 @@ public abstract class DefaultBindingManager extends GuiceServletContextListener
 
 	public SitemapModule getSitemapModule() {
 		if (this.sitemapModule == null) {
-			this.sitemapModule = new SitemapModule(getBasePackageReflections());
+			this.sitemapModule = new SitemapModule(getBasePackageIndex());
 		}
 		return this.sitemapModule;
 	}
@@ -299,7 +314,7 @@ public abstract class DefaultBindingManager extends GuiceServletContextListener
 
 	protected ErrorModule getErrorModule() {
 		if (this.errorModule == null) {
-			this.errorModule = new ErrorModule(getBasePackageReflections());
+			this.errorModule = new ErrorModule(getBasePackageIndex());
 		}
 		return this.errorModule;
 	}
@@ -367,6 +382,17 @@ public abstract class DefaultBindingManager extends GuiceServletContextListener
 			log.error("Exception while stopping services", e);
 		}
 
+		// releases the Destroyable instances of the Shiro module, as the files of a FileLoginAttemptLog
+		if (shiroModule != null) {
+			try {
+				shiroModule.destroy();
+			} catch (Exception e) {
+				log.error("Exception while destroying the Shiro module", e);
+			}
+		}
+
+		SharedClasspathIndex.clear();
+
 		// context may not have been crated, and super does not check for it
 		if (servletContextEvent.getServletContext() != null) {
 			super.contextDestroyed(servletContextEvent);
@@ -0,0 +1,56 @@
+package uk.q3c.krail.core.guice;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+/**
+ * The instances of one scope (a UI, a session), read concurrently by the request and the push threads. The creation
+ * is synchronized on the scope (not with a computeIfAbsent): creating an instance usually injects other instances of
+ * the same scope, recursively. Every instance is created once per scope.
+ */
+public class ScopedInstances {
+
+	/**
+	 * Placeholder of the null instances, that the map can't hold
+	 */
+	private static final Object NULL = new Object();
+
+	private static Logger log = LoggerFactory.getLogger(ScopedInstances.class);
+
+	private final ConcurrentMap<Key<?>, Object> instances = new ConcurrentHashMap<>();
+
+	/**
+	 * @param created
+	 *            incremented when the instance is created
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(Key<T> key, Provider<T> unscoped, LongAdder created) {
+		Object instance = instances.get(key);
+		if (instance == null) {
+			synchronized (this) {
+				instance = instances.get(key);
+				if (instance == null) {
+					T newInstance = unscoped.get();
+					instance = newInstance != null ? newInstance : NULL;
+					instances.put(key, instance);
+					created.increment();
+					if (log.isDebugEnabled()) {
+						log.debug("new instance of {} created, as none in cache", key);
+					}
+				}
+			}
+		}
+		return instance != NULL ? (T) instance : null;
+	}
+
+	public int size() {
+		return instances.size();
+	}
+}
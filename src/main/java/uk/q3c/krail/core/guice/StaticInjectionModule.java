@@ -8,26 +8,33 @@ import org.slf4j.LoggerFactory;
 
 import com.google.inject.AbstractModule;
 
+import uk.q3c.krail.core.guice.index.AnnotatedTypeIndex;
+import uk.q3c.krail.core.guice.index.ReflectionsTypeIndex;
+
 public class StaticInjectionModule extends AbstractModule {
 
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(StaticInjectionModule.class);
 
-	private final Reflections basePackageReflections;
+	private final AnnotatedTypeIndex typeIndex;
 
 	public StaticInjectionModule(String basePackage) {
-		this(new Reflections(basePackage));
+		this(AnnotatedTypeIndex.forBasePackage(basePackage));
 	}
 
 	public StaticInjectionModule(Reflections basePackageReflections) {
-		this.basePackageReflections = basePackageReflections;
+		this(new ReflectionsTypeIndex(basePackageReflections));
+	}
+
+	public StaticInjectionModule(AnnotatedTypeIndex typeIndex) {
+		this.typeIndex = typeIndex;
 	}
 
 	@Override
 	protected void configure() {
 		super.configure();
 
-		Set<Class<?>> staticInjectTypes = basePackageReflections
+		Set<Class<?>> staticInjectTypes = typeIndex
 				.getTypesAnnotatedWith(StaticInject.class);
 		if (!staticInjectTypes.isEmpty()) {
 
@@ -9,19 +9,26 @@ import org.slf4j.LoggerFactory;
 import com.google.inject.AbstractModule;
 import com.google.inject.multibindings.Multibinder;
 
+import uk.q3c.krail.core.guice.index.AnnotatedTypeIndex;
+import uk.q3c.krail.core.guice.index.ReflectionsTypeIndex;
+
 public class ErrorModule extends AbstractModule {
 
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(ErrorModule.class);
 
-	private final Reflections basePackageReflections;
+	private final AnnotatedTypeIndex typeIndex;
 
 	public ErrorModule(String basePackage) {
-		this(new Reflections(basePackage));
+		this(AnnotatedTypeIndex.forBasePackage(basePackage));
 	}
 
 	public ErrorModule(Reflections basePackageReflections) {
-		this.basePackageReflections = basePackageReflections;
+		this(new ReflectionsTypeIndex(basePackageReflections));
+	}
+
+	public ErrorModule(AnnotatedTypeIndex typeIndex) {
+		this.typeIndex = typeIndex;
 	}
 
 	@Override
@@ -42,12 +49,10 @@ public class ErrorModule extends AbstractModule {
 
 	protected void bindAnnotatedErrorHandlers(
 			Multibinder<ErrorHandler> errorHandlersBinder) {
-		LOGGER.info("scanning {} for HandleErrors annotations", basePackageReflections.getConfiguration().getUrls());
-		//TODO: usare sempre lo stesso Reflections in tutti i moduli, non ricrearlo sempre
-		
+		LOGGER.info("scanning {} for HandleErrors annotations", typeIndex);
 
-		// find the View annotations
-		Set<Class<?>> typesWithView = basePackageReflections
+		// find the HandleErrors annotations
+		Set<Class<?>> typesWithView = typeIndex
 				.getTypesAnnotatedWith(HandleErrors.class);
 		LOGGER.info("{} ErrorHandlers with HandleErrors annotation found",
 				typesWithView.size());
@@ -0,0 +1,48 @@
+package uk.q3c.krail.core.guice.index;
+
+import java.lang.annotation.Annotation;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.reflections.Reflections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Source of the annotated types (views, error handlers, static injections, auto
+ * factories) that the core modules configure automatically.<br>
+ * The index generated at compile time by {@link KrailIndexProcessor} is used
+ * when available, otherwise the base package is scanned with Reflections.
+ */
+public interface AnnotatedTypeIndex {
+
+	/**
+	 * @return the types annotated with the given annotation
+	 */
+	Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation);
+
+	/**
+	 * The generated index of the base package if present in the classpath,
+	 * otherwise the scan of the base package. Both are shared, see
+	 * {@link SharedClasspathIndex}.
+	 */
+	public static AnnotatedTypeIndex forBasePackage(String basePackage) {
+		return SharedClasspathIndex.getIndex(basePackage);
+	}
+
+	/**
+	 * The generated index of the base package if present in the classpath,
+	 * otherwise the index built from the reflections supplied by
+	 * <code>fallback</code>
+	 */
+	public static AnnotatedTypeIndex forBasePackage(String basePackage, Supplier<Reflections> fallback) {
+		Logger logger = LoggerFactory.getLogger(AnnotatedTypeIndex.class);
+		GeneratedTypeIndex generated = GeneratedTypeIndex.load(basePackage);
+		if (generated != null) {
+			logger.info("using the generated index of the annotated types in '{}'", basePackage);
+			return generated;
+		}
+		logger.info("no generated index found for '{}', the classpath will be scanned", basePackage);
+		return new ReflectionsTypeIndex(fallback.get());
+	}
+}
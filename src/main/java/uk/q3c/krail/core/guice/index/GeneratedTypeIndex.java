@@ -0,0 +1,204 @@
+package uk.q3c.krail.core.guice.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.scanners.TypeAnnotationsScanner;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AnnotatedTypeIndex} reading the files generated by
+ * {@link KrailIndexProcessor} (<code>META-INF/krail/*.idx</code>) from every
+ * jar and folder of the classpath, restricted to the types of the base
+ * package. The jars and folders of the base package without a generated index
+ * (not compiled with the processor) are scanned.<br>
+ * As for a Reflections scan, the types annotated include the subtypes of the
+ * annotated types.
+ */
+public class GeneratedTypeIndex implements AnnotatedTypeIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(GeneratedTypeIndex.class);
+
+	/**
+	 * @return the index of the types in the base package (all the types if
+	 *         empty), or null if there is no generated index in the jars and
+	 *         folders of that package
+	 */
+	public static GeneratedTypeIndex load(String basePackage) {
+		return load(basePackage, getDefaultClassLoader());
+	}
+
+	public static GeneratedTypeIndex load(String basePackage, ClassLoader classLoader) {
+		String prefix = basePackage == null || basePackage.isEmpty() ? "" : basePackage + ".";
+		Map<IndexFile, Set<String>> typeNames = new EnumMap<>(IndexFile.class);
+		Set<String> indexedRoots = new HashSet<>();
+		for (IndexFile file : IndexFile.values()) {
+			Set<String> names = new LinkedHashSet<>();
+			try {
+				Enumeration<URL> resources = classLoader.getResources(file.getResourceName());
+				while (resources.hasMoreElements()) {
+					URL resource = resources.nextElement();
+					String url = resource.toExternalForm();
+					indexedRoots.add(root(url.substring(0, url.length() - file.getResourceName().length())));
+					for (String name : read(resource)) {
+						if (name.startsWith(prefix)) {
+							names.add(name);
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read the generated index " + file.getResourceName(), e);
+			}
+			typeNames.put(file, names);
+		}
+		Collection<URL> roots = prefix.isEmpty() ? ClasspathHelper.forClassLoader(classLoader)
+				: ClasspathHelper.forPackage(basePackage, classLoader);
+		List<URL> unindexed = new ArrayList<>();
+		for (URL url : roots) {
+			if (!indexedRoots.contains(root(url.toExternalForm()))) {
+				unindexed.add(url);
+			}
+		}
+		if (unindexed.size() == roots.size()) {
+			return null;
+		}
+		Reflections scan = null;
+		if (!unindexed.isEmpty()) {
+			LOGGER.info("no generated index in {}, scanning them for '{}'", unindexed, basePackage);
+			scan = new Reflections(new ConfigurationBuilder().setUrls(unindexed)
+					.setScanners(new TypeAnnotationsScanner(), new SubTypesScanner())
+					.filterInputsBy(prefix.isEmpty() ? null : new FilterBuilder().includePackage(basePackage))
+					.addClassLoader(classLoader));
+		}
+		return new GeneratedTypeIndex(classLoader, typeNames, scan);
+	}
+
+	/**
+	 * The jar or folder of a classpath url, as <code>file:/lib/a.jar</code> for
+	 * both <code>file:/lib/a.jar</code> and <code>jar:file:/lib/a.jar!/</code>
+	 */
+	private static String root(String url) {
+		String root = url.startsWith("jar:") ? url.substring("jar:".length()) : url;
+		int separator = root.indexOf("!/");
+		if (separator >= 0) {
+			root = root.substring(0, separator);
+		}
+		return root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+	}
+
+	private static List<String> read(URL url) throws IOException {
+		List<String> names = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					names.add(line);
+				}
+			}
+		}
+		return names;
+	}
+
+	private static ClassLoader getDefaultClassLoader() {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		return classLoader != null ? classLoader : GeneratedTypeIndex.class.getClassLoader();
+	}
+
+	private final ClassLoader classLoader;
+	private final Map<IndexFile, Set<String>> typeNames;
+	/**
+	 * the scan of the jars and folders without an index, null if none
+	 */
+	private final Reflections unindexed;
+	private final Map<IndexFile, List<Class<?>>> types = new EnumMap<>(IndexFile.class);
+
+	private GeneratedTypeIndex(ClassLoader classLoader, Map<IndexFile, Set<String>> typeNames,
+			Reflections unindexed) {
+		this.classLoader = classLoader;
+		this.typeNames = typeNames;
+		this.unindexed = unindexed;
+	}
+
+	@Override
+	public synchronized Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation) {
+		IndexFile file = IndexFile.of(annotation);
+		if (file == null) {
+			throw new IllegalArgumentException("The annotation " + annotation + " is not indexed");
+		}
+		Set<Class<?>> result = new LinkedHashSet<>();
+		for (Class<?> type : types.computeIfAbsent(file, this::loadTypes)) {
+			if (isAnnotated(type, annotation)) {
+				result.add(type);
+			}
+		}
+		if (unindexed != null) {
+			// the subtypes in the scanned jars of the indexed types, then the scanned types
+			for (Class<?> type : new ArrayList<>(result)) {
+				result.addAll(unindexed.getSubTypesOf(type));
+			}
+			result.addAll(unindexed.getTypesAnnotatedWith(annotation));
+		}
+		return result;
+	}
+
+	/**
+	 * The type or one of its super types is annotated, the index lists both
+	 */
+	private static boolean isAnnotated(Class<?> type, Class<? extends Annotation> annotation) {
+		if (type.isAnnotationPresent(annotation)) {
+			return true;
+		}
+		Class<?> superclass = type.getSuperclass();
+		if (superclass != null && isAnnotated(superclass, annotation)) {
+			return true;
+		}
+		for (Class<?> superInterface : type.getInterfaces()) {
+			if (isAnnotated(superInterface, annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<Class<?>> loadTypes(IndexFile file) {
+		List<Class<?>> loaded = new ArrayList<>();
+		for (String name : typeNames.get(file)) {
+			try {
+				loaded.add(Class.forName(name, false, classLoader));
+			} catch (ClassNotFoundException | LinkageError e) {
+				// a stale entry, the type has been removed after the index was generated
+				LOGGER.warn("The type {} listed in {} can't be loaded, it will be ignored: {}", name,
+						file.getResourceName(), e.toString());
+			}
+		}
+		return Collections.unmodifiableList(loaded);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "@" + typeNames.values()
+				+ (unindexed != null ? "+" + unindexed.getConfiguration().getUrls() : "");
+	}
+}
@@ -0,0 +1,59 @@
+package uk.q3c.krail.core.guice.index;
+
+import java.lang.annotation.Annotation;
+
+import uk.q3c.krail.core.guice.AutoFactory;
+import uk.q3c.krail.core.guice.StaticInject;
+import uk.q3c.krail.core.guice.errors.HandleErrors;
+import uk.q3c.krail.core.navigate.sitemap.annotations.Redirect;
+import uk.q3c.krail.core.navigate.sitemap.annotations.Redirects;
+import uk.q3c.krail.core.navigate.sitemap.annotations.StandardPage;
+import uk.q3c.krail.core.navigate.sitemap.annotations.View;
+
+/**
+ * The files of the generated index and the annotations recorded in each one.
+ * Every file lists the binary names of the annotated types, one per line.
+ */
+enum IndexFile {
+	VIEWS("views.idx", View.class, Redirect.class, Redirects.class, StandardPage.class),
+	ERROR_HANDLERS("error-handlers.idx", HandleErrors.class),
+	STATIC_INJECT("static-inject.idx", StaticInject.class),
+	AUTO_FACTORIES("auto-factories.idx", AutoFactory.class);
+
+	static final String LOCATION = "META-INF/krail/";
+
+	private final String fileName;
+	private final Class<? extends Annotation>[] annotations;
+
+	@SafeVarargs
+	private IndexFile(String fileName, Class<? extends Annotation>... annotations) {
+		this.fileName = fileName;
+		this.annotations = annotations;
+	}
+
+	String getFileName() {
+		return fileName;
+	}
+
+	String getResourceName() {
+		return LOCATION + fileName;
+	}
+
+	Class<? extends Annotation>[] getAnnotations() {
+		return annotations;
+	}
+
+	/**
+	 * @return the file recording the annotation, or null if it is not indexed
+	 */
+	static IndexFile of(Class<? extends Annotation> annotation) {
+		for (IndexFile file : values()) {
+			for (Class<? extends Annotation> a : file.annotations) {
+				if (a.equals(annotation)) {
+					return file;
+				}
+			}
+		}
+		return null;
+	}
+}
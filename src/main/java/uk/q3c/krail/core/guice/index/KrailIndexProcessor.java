@@ -0,0 +1,244 @@
+package uk.q3c.krail.core.guice.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import uk.q3c.krail.core.guice.AutoFactory;
+import uk.q3c.krail.core.guice.errors.HandleErrors;
+import uk.q3c.krail.core.navigate.sitemap.annotations.Redirect;
+import uk.q3c.krail.core.navigate.sitemap.annotations.Redirects;
+import uk.q3c.krail.core.navigate.sitemap.annotations.View;
+
+/**
+ * Generates, at compile time, the index of the annotated types read by
+ * {@link GeneratedTypeIndex}, so that the application doesn't need to scan the
+ * classpath at startup. It is registered as a service, so it runs when krail is
+ * in the compile classpath of the application.<br>
+ * Also reports as compile errors the annotation misuses that would otherwise
+ * fail at startup (a Redirect without View, a View that is not a KrailView,
+ * ...).
+ */
+public class KrailIndexProcessor extends AbstractProcessor {
+
+	private static final String KRAIL_VIEW = "uk.q3c.krail.core.view.KrailView";
+	private static final String ERROR_HANDLER = "uk.q3c.krail.core.guice.errors.ErrorHandler";
+
+	private final Map<IndexFile, Set<String>> entries = new EnumMap<>(IndexFile.class);
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		Set<String> names = new LinkedHashSet<>();
+		for (IndexFile file : IndexFile.values()) {
+			for (Class<? extends Annotation> annotation : file.getAnnotations()) {
+				names.add(annotation.getCanonicalName());
+			}
+		}
+		return names;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Elements elements = processingEnv.getElementUtils();
+		for (IndexFile file : IndexFile.values()) {
+			Set<String> names = entries.computeIfAbsent(file, f -> new TreeSet<>());
+			for (Class<? extends Annotation> annotation : file.getAnnotations()) {
+				TypeElement annotationElement = elements.getTypeElement(annotation.getCanonicalName());
+				if (annotationElement == null) {
+					continue;
+				}
+				for (Element element : roundEnv.getElementsAnnotatedWith(annotationElement)) {
+					if (element instanceof TypeElement) {
+						TypeElement type = (TypeElement) element;
+						check(annotation, type);
+						names.add(elements.getBinaryName(type).toString());
+					}
+				}
+			}
+			// the subtypes of the annotated types are listed too, as found by a scan
+			for (TypeElement type : types(roundEnv.getRootElements())) {
+				if (isIndexed(file, type)) {
+					names.add(elements.getBinaryName(type).toString());
+				}
+			}
+		}
+		if (roundEnv.processingOver()) {
+			for (Map.Entry<IndexFile, Set<String>> entry : entries.entrySet()) {
+				write(entry.getKey(), entry.getValue());
+			}
+		}
+		// the annotations are not claimed, other processors may need them
+		return false;
+	}
+
+	private void check(Class<? extends Annotation> annotation, TypeElement type) {
+		if (annotation == Redirect.class || annotation == Redirects.class) {
+			if (!hasAnnotation(type, View.class)) {
+				error(type, "The type is annotated with " + annotation.getSimpleName() + ", but not View");
+			}
+		} else if (annotation == View.class) {
+			if (!isSubtype(type, KRAIL_VIEW)) {
+				error(type, "Classes annotated with View should be a KrailView");
+			}
+		} else if (annotation == HandleErrors.class) {
+			if (!isSubtype(type, ERROR_HANDLER)) {
+				error(type, "The type annotated with @HandleErrors must implement ErrorHandler");
+			}
+		} else if (annotation == AutoFactory.class) {
+			if (type.getKind() != ElementKind.INTERFACE) {
+				error(type, "@AutoFactory can be applied only on iterfaces");
+			}
+		}
+	}
+
+	private boolean isSubtype(TypeElement type, String superTypeName) {
+		TypeElement superType = processingEnv.getElementUtils().getTypeElement(superTypeName);
+		if (superType == null) {
+			// not in the classpath, can't tell
+			return true;
+		}
+		Types types = processingEnv.getTypeUtils();
+		return types.isAssignable(types.erasure(type.asType()), types.erasure(superType.asType()));
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+	}
+
+	/**
+	 * Writes the index file, keeping the entries of a previous (incremental)
+	 * compilation that are still valid
+	 */
+	private void write(IndexFile file, Set<String> names) {
+		Set<String> merged = new TreeSet<>(names);
+		boolean existing = readExisting(file, merged);
+		if (merged.isEmpty() && !existing) {
+			return;
+		}
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					file.getResourceName());
+			try (Writer writer = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+				writer.write("# generated by " + getClass().getName() + ", do not edit\n");
+				for (String name : merged) {
+					writer.write(name);
+					writer.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR,
+					"Unable to write " + file.getResourceName() + ": " + e);
+		}
+	}
+
+	private boolean readExisting(IndexFile file, Set<String> names) {
+		try {
+			FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					file.getResourceName());
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(resource.openInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#") && isStillIndexed(file, line)) {
+						names.add(line);
+					}
+				}
+			}
+			return true;
+		} catch (IOException | IllegalArgumentException e) {
+			// not generated yet, or the compiler can't read the class output
+			return false;
+		}
+	}
+
+	private boolean isStillIndexed(IndexFile file, String binaryName) {
+		TypeElement type = processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.'));
+		return type != null && isIndexed(file, type);
+	}
+
+	/**
+	 * The type or one of its super types is annotated with an annotation of the
+	 * file
+	 */
+	private boolean isIndexed(IndexFile file, TypeElement type) {
+		for (Class<? extends Annotation> annotation : file.getAnnotations()) {
+			if (hasAnnotationInHierarchy(type, annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasAnnotationInHierarchy(TypeElement type, Class<? extends Annotation> annotation) {
+		if (hasAnnotation(type, annotation)) {
+			return true;
+		}
+		List<TypeMirror> superTypes = new ArrayList<>(type.getInterfaces());
+		superTypes.add(type.getSuperclass());
+		for (TypeMirror superType : superTypes) {
+			if (superType.getKind() == TypeKind.DECLARED
+					&& hasAnnotationInHierarchy((TypeElement) ((DeclaredType) superType).asElement(), annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The types and their nested types
+	 */
+	private static List<TypeElement> types(Collection<? extends Element> elements) {
+		List<TypeElement> types = new ArrayList<>();
+		for (Element element : elements) {
+			if (element instanceof TypeElement) {
+				types.add((TypeElement) element);
+				types.addAll(types(element.getEnclosedElements()));
+			}
+		}
+		return types;
+	}
+
+	private static boolean hasAnnotation(TypeElement type, Class<? extends Annotation> annotation) {
+		for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+					.contentEquals(annotation.getCanonicalName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,32 @@
+package uk.q3c.krail.core.guice.index;
+
+import java.lang.annotation.Annotation;
+import java.util.Set;
+
+import org.reflections.Reflections;
+
+/**
+ * {@link AnnotatedTypeIndex} backed by a Reflections scan
+ */
+public class ReflectionsTypeIndex implements AnnotatedTypeIndex {
+
+	private final Reflections reflections;
+
+	public ReflectionsTypeIndex(Reflections reflections) {
+		this.reflections = reflections;
+	}
+
+	public Reflections getReflections() {
+		return reflections;
+	}
+
+	@Override
+	public Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation) {
+		return reflections.getTypesAnnotatedWith(annotation);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "@" + reflections.getConfiguration().getUrls();
+	}
+}
@@ -0,0 +1,90 @@
+package uk.q3c.krail.core.guice.index;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.MethodAnnotationsScanner;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.scanners.TypeAnnotationsScanner;
+import org.reflections.util.ConfigurationBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The classpath scans and the indexes of the annotated types, shared by all the
+ * modules: every base package is scanned (or its generated index read) once,
+ * whoever asks first, with the classloader of this class. The scans are held,
+ * by base package, until {@link #clear()} (called when the web application is
+ * undeployed) or until this class is unloaded with its classloader. The scan of
+ * the jars and folders of the classpath runs in parallel on a fork-join pool
+ * with one thread per core.
+ */
+public final class SharedClasspathIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SharedClasspathIndex.class);
+
+	private static final ConcurrentMap<String, Reflections> reflections = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, AnnotatedTypeIndex> indexes = new ConcurrentHashMap<>();
+
+	private SharedClasspathIndex() {
+	}
+
+	/**
+	 * The generated index of the base package if present in the classpath,
+	 * otherwise the (shared) scan of the base package
+	 */
+	public static AnnotatedTypeIndex getIndex(String basePackage) {
+		return indexes.computeIfAbsent(normalize(basePackage), SharedClasspathIndex::loadIndex);
+	}
+
+	/**
+	 * The scan of the base package (types annotations, sub types and methods
+	 * annotations), executed the first time it is requested.
+	 */
+	public static Reflections getReflections(String basePackage) {
+		return reflections.computeIfAbsent(normalize(basePackage), SharedClasspathIndex::scan);
+	}
+
+	/**
+	 * Releases the scans and the indexes, they are computed again if requested
+	 */
+	public static void clear() {
+		reflections.clear();
+		indexes.clear();
+	}
+
+	private static String normalize(String basePackage) {
+		return basePackage == null ? "" : basePackage;
+	}
+
+	private static AnnotatedTypeIndex loadIndex(String basePackage) {
+		long start = System.nanoTime();
+		AnnotatedTypeIndex index = GeneratedTypeIndex.load(basePackage);
+		if (index != null) {
+			LOGGER.info("generated index of the annotated types in '{}' read in {} ms", basePackage,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			return index;
+		}
+		LOGGER.info("no generated index found for '{}', the classpath will be scanned", basePackage);
+		return new ReflectionsTypeIndex(getReflections(basePackage));
+	}
+
+	private static Reflections scan(String basePackage) {
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		ConfigurationBuilder configuration = ConfigurationBuilder
+				.build(basePackage, new TypeAnnotationsScanner(), new SubTypesScanner(), new MethodAnnotationsScanner())
+				// shut down by Reflections at the end of the scan
+				.setExecutorService(new ForkJoinPool(parallelism));
+
+		long start = System.nanoTime();
+		Reflections result = new Reflections(configuration);
+		LOGGER.info("scanned {} classpath entries for '{}' in {} ms on {} threads, {} type annotations found",
+				configuration.getUrls().size(), basePackage,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), parallelism,
+				result.getStore().get(TypeAnnotationsScanner.class.getSimpleName()).size());
+		return result;
+	}
+}
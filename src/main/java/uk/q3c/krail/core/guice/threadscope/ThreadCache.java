@@ -15,20 +15,23 @@ package uk.q3c.krail.core.guice.threadscope;
 
 import com.google.inject.Key;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Simple thread scope implementation for Guice, Apache 2.0 licensed. Enjoy!
  *
  */
 
 /**
+ * The instances of the {@link ThreadScoped} bindings, for the current thread.<br>
+ * <br>
+ * The scope is bounded: it is opened and closed for every request by the {@link ThreadScopeRequestInterceptor}, and
+ * for every background task run by <code>KrailSecurityManager.runAsSubject</code>, so the instances never leak to
+ * the next request served by a pooled thread (or a virtual thread that is reused). Outside of them the cache of the
+ * thread is created when first needed and lives until {@link #reset()}.
+ *
  * @author Robbie Vanbrabant
  * @see CustomScopes#THREAD
  */
 public class ThreadCache {
-    // use lazy readFromEnvironment to avoid memory overhead when not using the scope?
     private static final ThreadLocal<Cache> THREAD_LOCAL = new ThreadLocal<Cache>() {
         @Override
         protected Cache initialValue() {
@@ -53,23 +56,108 @@ public class ThreadCache {
     }
 
     /**
-     * Cache class for type capture and minimizing ThreadLocal lookups.
+     * Opens a new, empty, scope for the current thread. Close it in a finally block:<br>
+     * <br>
+     * <code>
+     * Cache previous = ThreadCache.openScope();<br>
+     * try {<br>
+     * &nbsp;&nbsp;...<br>
+     * } finally {<br>
+     * &nbsp;&nbsp;ThreadCache.closeScope(previous);<br>
+     * }<br>
+     * </code>
+     *
+     * @return the scope that was open, to be restored by {@link #closeScope(Cache)}, or null
+     */
+    public static Cache openScope() {
+        Cache previous = THREAD_LOCAL.get();
+        THREAD_LOCAL.set(new Cache());
+        return previous.isEmpty() ? null : previous;
+    }
+
+    /**
+     * Closes the scope of the current thread, restoring the <code>previous</code> one if not null
+     */
+    public static void closeScope(Cache previous) {
+        if (previous != null) {
+            THREAD_LOCAL.set(previous);
+        } else {
+            THREAD_LOCAL.remove();
+        }
+    }
+
+    /**
+     * Cache class for type capture and minimizing ThreadLocal lookups. A thread holds a few instances, so they are
+     * kept in a small open-addressed table (linear probing) instead of a HashMap.
      */
     public static class Cache {
-        private final Map<Key<?>, Object> map = new HashMap<Key<?>, Object>();
+        private static final int INITIAL_CAPACITY = 8;
+
+        private Key<?>[] keys = new Key<?>[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
 
         public Cache() {
         }
 
+        private static int index(Key<?> key, int mask) {
+            int h = key.hashCode();
+            return (h ^ (h >>> 16)) & mask;
+        }
+
         // suppress warnings because the add method
         // captures the type
         @SuppressWarnings("unchecked")
         public <T> T get(Key<T> key) {
-            return (T) map.get(key);
+            int mask = keys.length - 1;
+            for (int i = index(key, mask);; i = (i + 1) & mask) {
+                Key<?> k = keys[i];
+                if (k == null) {
+                    return null;
+                }
+                if (k.equals(key)) {
+                    return (T) values[i];
+                }
+            }
         }
 
         public <T> void add(Key<T> key, T value) {
-            map.put(key, value);
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            for (; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key)) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            // load factor 2/3
+            if (++size * 3 >= keys.length * 2) {
+                resize();
+            }
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void resize() {
+            Key<?>[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new Key<?>[oldKeys.length * 2];
+            values = new Object[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    int i = index(oldKeys[j], mask);
+                    while (keys[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
         }
     }
 }
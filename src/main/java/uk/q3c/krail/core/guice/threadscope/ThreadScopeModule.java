@@ -1,8 +1,11 @@
 package uk.q3c.krail.core.guice.threadscope;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.multibindings.Multibinder;
 import com.google.inject.name.Names;
 
+import uk.q3c.krail.core.guice.KrailRequestInterceptor;
+
 public class ThreadScopeModule extends AbstractModule {
 	private final ThreadScope scope;
 
@@ -20,6 +23,17 @@ public class ThreadScopeModule extends AbstractModule {
 		// make our scope instance injectable
 		bind(ThreadScope.class).annotatedWith(Names.named("ThreadScope")).toInstance(scope);
 
+		Multibinder<KrailRequestInterceptor> krailRequestHandlerBinder = Multibinder.newSetBinder(binder(),
+				KrailRequestInterceptor.class);
+		bindRequestInterceptor(krailRequestHandlerBinder);
+
+	}
+
+	/**
+	 * Override this to change the bounds of the scope, by default it is opened and closed for every request
+	 */
+	protected void bindRequestInterceptor(Multibinder<KrailRequestInterceptor> krailRequestHandlerBinder) {
+		krailRequestHandlerBinder.addBinding().to(ThreadScopeRequestInterceptor.class);
 	}
 
 	public ThreadScope getScope() {
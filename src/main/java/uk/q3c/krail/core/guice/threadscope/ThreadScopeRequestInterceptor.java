@@ -0,0 +1,35 @@
+package uk.q3c.krail.core.guice.threadscope;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinSession;
+
+import uk.q3c.krail.core.guice.KrailRequestInterceptor;
+
+/**
+ * Bounds the {@link ThreadScoped} instances to the request: the scope is opened when the request starts and closed
+ * when it ends, whatever thread serves it.
+ */
+public class ThreadScopeRequestInterceptor implements KrailRequestInterceptor {
+
+	@Override
+	public void init() {
+		;
+	}
+
+	@Override
+	public void destroy() {
+		;
+	}
+
+	@Override
+	public void requestStart(VaadinRequest request, VaadinResponse response) {
+		// whatever is left in the thread belongs to a previous request
+		ThreadCache.openScope();
+	}
+
+	@Override
+	public void requestEnd(VaadinRequest request, VaadinResponse response, VaadinSession session) {
+		ThreadCache.closeScope(null);
+	}
+}
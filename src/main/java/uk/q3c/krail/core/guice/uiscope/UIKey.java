@@ -22,12 +22,13 @@ package uk.q3c.krail.core.guice.uiscope;
  * by a {@link UIKey}, which is available from the start of UI construction. The UI itself, and any UIScoped injections
  * are then linked by that {@link UIKey} instance.<br>
  * <br>
- * The counter value is set by the {@link UIKeyProvider}
+ * The counter value is set by the {@link UIKeyProvider}, it is unique in the node. UIKeys are compared by value, so
+ * they can be used as keys of hash maps.
  */
-public class UIKey implements Comparable<UIKey> {
-    private final int counter;
+public final class UIKey implements Comparable<UIKey> {
+    private final long counter;
 
-    public UIKey(int counter) {
+    public UIKey(long counter) {
         super();
         this.counter = counter;
     }
@@ -39,10 +40,20 @@ public class UIKey implements Comparable<UIKey> {
 
     @Override
     public int compareTo(UIKey other) {
-        return this.getCounter() - other.getCounter();
+        return Long.compare(this.counter, other.counter);
     }
 
-    public int getCounter() {
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof UIKey && ((UIKey) obj).counter == counter;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(counter);
+    }
+
+    public long getCounter() {
         return counter;
     }
 
@@ -12,15 +12,19 @@
  */
 package uk.q3c.krail.core.guice.uiscope;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.google.inject.Provider;
 
+/**
+ * Provides a new {@link UIKey} every time, unique in the node even when the UIs are created concurrently
+ */
 public class UIKeyProvider implements Provider<UIKey> {
-    private static int counter = 0;
+    private static final AtomicLong counter = new AtomicLong();
 
     @Override
     public UIKey get() {
-        counter++;
-        return new UIKey(counter);
+        return new UIKey(counter.incrementAndGet());
     }
 
 }
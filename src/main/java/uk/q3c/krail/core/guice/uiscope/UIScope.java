@@ -12,21 +12,37 @@
  */
 package uk.q3c.krail.core.guice.uiscope;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.q3c.krail.core.guice.ScopedInstances;
 import uk.q3c.krail.core.ui.ScopedUI;
 
 import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.inject.Scope;
+import com.vaadin.server.VaadinSession;
 
 /**
- * Provides a Guice scope based on a Vaadin UI, generally equivalent to a browser tab
+ * Provides a Guice scope based on a Vaadin UI, generally equivalent to a browser tab<br>
+ * <br>
+ * The UIs are served concurrently by the request (and push) threads, so the instances are kept in a concurrent map of
+ * {@link ScopedInstances}, one per UI: there is no global lock, and every instance is created once per UI.<br>
+ * <br>
+ * A scope is released when its UI is detached (including the UIs closed by Vaadin after missing heartbeats, see
+ * <code>ScopedUIProvider</code>), or when its session is destroyed ({@link #releaseScopes(VaadinSession)}). The
+ * scopes never attached to a UI, because the creation of the UI failed, are evicted by {@link #sweep()} (run
+ * periodically by the servlet). The sweep doesn't look at the state of the UIs and of the sessions, that can be read
+ * only with the lock of their session.
  * 
  * @author Will Temperley 2014
  * @author David Sowerby 2013
@@ -34,40 +50,95 @@ import com.google.inject.Scope;
  */
 public class UIScope implements Scope {
 
+	/**
+	 * The instances of a UI, linked to the session of the UI once the UI has been created
+	 */
+	static final class UIScopedInstances extends ScopedInstances {
+
+		private final long startTime = System.nanoTime();
+		private volatile boolean attached;
+		/**
+		 * weak only not to keep a reference to the session from the static cache, the instances usually keep it
+		 */
+		private volatile WeakReference<VaadinSession> session;
+
+		void attach(VaadinSession session) {
+			this.session = session != null ? new WeakReference<>(session) : null;
+			attached = true;
+		}
+
+		boolean belongsTo(VaadinSession vaadinSession) {
+			WeakReference<VaadinSession> sessionReference = session;
+			return sessionReference != null && sessionReference.get() == vaadinSession;
+		}
+
+		/**
+		 * @return why the scope is stale, or null if it is (or may still be) in use
+		 */
+		String staleReason(long now) {
+			// not attached: the UI is being created, or its creation failed
+			return !attached && now - startTime > GRACE_PERIOD ? "no UI" : null;
+		}
+	}
+
+	/**
+	 * The time given to a new scope to get its UI attached, before it can be swept
+	 */
+	private static final long GRACE_PERIOD = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * The minimum time between two sweeps, see {@link #sweepIfDue()}
+	 */
+	private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
 	private static Logger log = LoggerFactory.getLogger(UIScope.class);
 
 	private static volatile UIScope current;
 
-	private final Map<UIKey, Map<Key<?>, Object>> cache = new TreeMap<UIKey, Map<Key<?>, Object>>();
+	private final ConcurrentMap<UIKey, UIScopedInstances> cache = new ConcurrentHashMap<>();
+
+	private final LongAdder startedScopes = new LongAdder();
+	private final LongAdder releasedScopes = new LongAdder();
+	private final LongAdder createdInstances = new LongAdder();
+	private final LongAdder evictedScopes = new LongAdder();
+	private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL);
 
 	public UIScope() {
 		super();
 		log.debug("creating UIScope {}", this);
 	}
 
-	<T> Map<Key<?>, Object> getScopedObjectMap(UIKey uiKey) {
+	UIScopedInstances getScopedInstances(UIKey uiKey) {
 		// return an existing cache instance
-		if (cache.containsKey(uiKey)) {
-			Map<Key<?>, Object> scopedObjects = cache.get(uiKey);
-			log.debug("scope cache retrieved for UI key: {}", uiKey);
-			return scopedObjects;
-		} else {
-
-			return createCacheEntry(uiKey);
+		UIScopedInstances scopedInstances = cache.get(uiKey);
+		if (scopedInstances != null) {
+			return scopedInstances;
 		}
+		return createCacheEntry(uiKey);
+	}
+
+	<T> T get(UIKey uiKey, Key<T> key, Provider<T> unscoped) {
+		return getScopedInstances(uiKey).get(key, unscoped, createdInstances);
 	}
 
-	private Map<Key<?>, Object> createCacheEntry(UIKey uiKey) {
-		Map<Key<?>, Object> uiEntry = new HashMap<Key<?>, Object>();
-		cache.put(uiKey, uiEntry);
-		log.debug("created a scope cache for UIScope with key: {}", uiKey);
-		return uiEntry;
+	private UIScopedInstances createCacheEntry(UIKey uiKey) {
+		return cache.computeIfAbsent(uiKey, k -> {
+			startedScopes.increment();
+			log.debug("created a scope cache for UIScope with key: {}", k);
+			return new UIScopedInstances();
+		});
 	}
 
 	public void startScope(UIKey uiKey) {
-		if (!cacheHasEntryFor(uiKey)) {
-			createCacheEntry(uiKey);
-		}
+		createCacheEntry(uiKey);
+	}
+
+	/**
+	 * Links the scope to the session of its UI, once the UI has been created, so that it can be released with the
+	 * session; the scopes not attached are swept
+	 */
+	public void attach(UIKey uiKey, VaadinSession session) {
+		getScopedInstances(uiKey).attach(session);
 	}
 
 	public boolean cacheHasEntryFor(UIKey uiKey) {
@@ -79,7 +150,66 @@ public class UIScope implements Scope {
 	}
 
 	public void releaseScope(UIKey uiKey) {
-		cache.remove(uiKey);
+		if (cache.remove(uiKey) != null) {
+			releasedScopes.increment();
+			log.debug("released the scope cache for UIScope with key: {}", uiKey);
+		}
+	}
+
+	/**
+	 * Releases the scopes of all the UIs of the session, to be called when the session is destroyed
+	 * 
+	 * @return the number of released scopes
+	 */
+	public int releaseScopes(VaadinSession session) {
+		int released = 0;
+		Iterator<UIScopedInstances> it = cache.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().belongsTo(session)) {
+				it.remove();
+				released++;
+			}
+		}
+		if (released > 0) {
+			evictedScopes.add(released);
+			log.debug("released {} UI scopes of the destroyed session {}", released, session);
+		}
+		return released;
+	}
+
+	/**
+	 * Evicts the stale scopes: the ones never attached to a UI after the grace period
+	 * 
+	 * @return the number of evicted scopes
+	 */
+	public int sweep() {
+		long now = System.nanoTime();
+		int evicted = 0;
+		for (Map.Entry<UIKey, UIScopedInstances> entry : cache.entrySet()) {
+			String reason = entry.getValue().staleReason(now);
+			// remove only that slot, it may have been replaced meanwhile
+			if (reason != null && cache.remove(entry.getKey(), entry.getValue())) {
+				evicted++;
+				log.debug("evicted the UI scope with key {}: {}", entry.getKey(), reason);
+			}
+		}
+		evictedScopes.add(evicted);
+		if (evicted > 0) {
+			log.info("UI scope sweep: {} evicted, {} live", evicted, cache.size());
+		}
+		return evicted;
+	}
+
+	/**
+	 * Runs {@link #sweep()} if the sweep interval has elapsed since the last one. Cheap enough to be called at the end of
+	 * every request: only one of the concurrent callers sweeps.
+	 */
+	public void sweepIfDue() {
+		long now = System.nanoTime();
+		long next = nextSweep.get();
+		if (now - next >= 0 && nextSweep.compareAndSet(next, now + SWEEP_INTERVAL)) {
+			sweep();
+		}
 	}
 
 	public static UIScope getCurrent() {
@@ -104,8 +234,54 @@ public class UIScope implements Scope {
 		cache.clear();
 	}
 
+	/**
+	 * @return the number of UIs with a scope
+	 */
+	public int getScopeCount() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the number of instances currently held, for all the UIs
+	 */
+	public long getInstanceCount() {
+		long count = 0;
+		for (UIScopedInstances scopedInstances : cache.values()) {
+			count += scopedInstances.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of scopes started since the creation of the scope
+	 */
+	public long getStartedScopeCount() {
+		return startedScopes.sum();
+	}
+
+	/**
+	 * @return the number of scopes released since the creation of the scope
+	 */
+	public long getReleasedScopeCount() {
+		return releasedScopes.sum();
+	}
+
+	/**
+	 * @return the number of scopes evicted because of a destroyed session, or by a sweep
+	 */
+	public long getEvictedScopeCount() {
+		return evictedScopes.sum();
+	}
+
+	/**
+	 * @return the number of instances created since the creation of the scope
+	 */
+	public long getCreatedInstanceCount() {
+		return createdInstances.sum();
+	}
+
 	@Override
 	public <T> Provider<T> scope(Key<T> key, Provider<T> unscoped) {
 		return new UIScopeProvider<T>(this, key, unscoped);
 	}
-}
\ No newline at end of file
+}
@@ -12,8 +12,6 @@
  */
 package uk.q3c.krail.core.guice.uiscope;
 
-import java.util.Map;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +29,7 @@ import com.vaadin.util.CurrentInstance;
  */
 class UIScopeProvider<T> implements Provider<T> {
 	private static Logger log = LoggerFactory.getLogger(UIScopeProvider.class);
+	private static final String MESSAGE = "This can happen if you include UIScoped components in your ScopedUIProvider, or you are testing and have not set up the test fixture correctly.  For the latter, try sub-classing UITestBase and calling createTestUI() or createBasicUI() to prepare the UIScope correctly.  If you are not testing please report a bug";
 	private final UIScope uiScope;
 	private final Key<T> key;
 	private final Provider<T> unscoped;
@@ -43,52 +42,33 @@ class UIScopeProvider<T> implements Provider<T> {
 
 	@Override
 	public T get() {
-		// get the scope cache for the current UI
-		log.debug("looking for a UIScoped instance of {}", key.getClass().getName());
-
-		// get the current UIKey. It should always be there, as it is created before the UI
-		UIKey uiKey = CurrentInstance.get(UIKey.class);
-		// this may be null if we are in the process of constructing the UI
+		// a single lookup of the current UI, its key is the one it has been created with
 		ScopedUI currentUI = (ScopedUI) UI.getCurrent();
-		final String msg = "This can happen if you include UIScoped components in your ScopedUIProvider, or you are testing and have not set up the test fixture correctly.  For the latter, try sub-classing UITestBase and calling createTestUI() or createBasicUI() to prepare the UIScope correctly.  If you are not testing please report a bug";
+		UIKey uiKey = currentUI != null ? currentUI.getInstanceKey() : null;
 		if (uiKey == null) {
-			if (currentUI == null) {
-				throw new UIScopeException("UI and uiKey are null. " + msg);
-			} else {
-				// this can happen when the framework switches UIs
-				uiKey = currentUI.getInstanceKey();
-				if (uiKey == null) {
-					throw new UIScopeException("uiKey is null and cannot be obtained from the UI. " + msg);
-				}
+			// the UI is being constructed, the key is held while it is created
+			uiKey = CurrentInstance.get(UIKey.class);
+			if (uiKey == null) {
+				throw new UIScopeException(
+						(currentUI == null ? "UI and uiKey are null. " : "uiKey is null and cannot be obtained from the UI. ")
+								+ MESSAGE);
 			}
 		}
-
-		// currentUI may be null if we are in the process of constructing the UI
-		// if not null just check that it hasn't got out of sync with its uikey
-		if (currentUI != null) {
-			if (!uiKey.equals(currentUI.getInstanceKey())) {
-				throw new UIScopeException("The UI and its UIKey have got out of sync.  Results are unpredictable. "
-						+ msg);
-			}
+		if (currentUI != null && !inSync(uiKey)) {
+			throw new UIScopeException("The UI and its UIKey have got out of sync.  Results are unpredictable. " + MESSAGE);
 		}
 
-		log.debug("looking for cache for key: " + uiKey);
-		Map<Key<?>, Object> scopedObjects = this.uiScope.getScopedObjectMap(uiKey);
-
-		// retrieve an existing instance if possible
-
-		@SuppressWarnings("unchecked")
-		T current = (T) scopedObjects.get(key);
-
-		if (current != null) {
-			log.debug("returning existing instance of " + current.getClass().getSimpleName());
-			return current;
+		if (log.isDebugEnabled()) {
+			log.debug("looking for a UIScoped instance of {} for key: {}", key, uiKey);
 		}
+		return this.uiScope.get(uiKey, key, unscoped);
+	}
 
-		// or create the first instance and cache it
-		current = unscoped.get();
-		scopedObjects.put(key, current);
-		log.debug("new instance of " + current.getClass().getSimpleName() + " created, as none in cache");
-		return current;
+	/**
+	 * The UIKey held while the UI is created (if still there) should be the one of the UI
+	 */
+	private static boolean inSync(UIKey uiKey) {
+		UIKey heldKey = CurrentInstance.get(UIKey.class);
+		return heldKey == null || heldKey.equals(uiKey);
 	}
 }
@@ -12,23 +12,30 @@
  */
 package uk.q3c.krail.core.guice.vsscope;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.MapMaker;
 import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.inject.Scope;
 import com.google.inject.servlet.SessionScoped;
 import com.vaadin.server.VaadinSession;
 
+import uk.q3c.krail.core.guice.ScopedInstances;
+
 /**
  * Provides a Guice scope based on a {@link VaadinSession}. This was necessary because the standard
  * {@link SessionScoped} will only work with a UI (and not things like Views, which where a session scope is most
- * useful) if a UI has server push enabled. See https://github.com/davidsowerby/v7/issues/241
+ * useful) if a UI has server push enabled. See https://github.com/davidsowerby/v7/issues/241<br>
+ * <br>
+ * The instances are kept in a concurrent identity map of the sessions, accessed by the request and the push threads,
+ * and every instance is created once per session ({@link ScopedInstances}). The entries are released when the session
+ * is destroyed (by the servlet, see {@link #releaseScope(VaadinSession)}); the session keys are weak only as a safety
+ * net.
  * 
  * @author David Sowerby 2014
  * 
@@ -39,43 +46,55 @@ public class VaadinSessionScope implements Scope {
 
 	private static volatile VaadinSessionScope current;
 
-	private final Map<VaadinSession, Map<Key<?>, Object>> cache = new WeakHashMap<>();
+	/**
+	 * Weak keys, compared by identity
+	 */
+	private final ConcurrentMap<VaadinSession, ScopedInstances> cache = new MapMaker().weakKeys().makeMap();
+
+	private final LongAdder releasedScopes = new LongAdder();
+	private final LongAdder createdInstances = new LongAdder();
 
 	public VaadinSessionScope() {
 		super();
 		log.debug("creating VaadinSessionScope {}", this);
 	}
 
-	<T> Map<Key<?>, Object> getScopedObjectMap(VaadinSession vaadinSession) {
+	ScopedInstances getScopedInstances(VaadinSession vaadinSession) {
 		// return an existing cache instance
-		if (cache.containsKey(vaadinSession)) {
-			Map<Key<?>, Object> scopedObjects = cache.get(vaadinSession);
-			log.debug("scope cache retrieved for VaadinSession: {}", vaadinSession);
-			return scopedObjects;
-		} else {
-			return createCacheEntry(vaadinSession);
+		ScopedInstances scopedInstances = cache.get(vaadinSession);
+		if (scopedInstances != null) {
+			return scopedInstances;
 		}
+		return createCacheEntry(vaadinSession);
+	}
+
+	<T> T get(VaadinSession vaadinSession, Key<T> key, Provider<T> unscoped) {
+		return getScopedInstances(vaadinSession).get(key, unscoped, createdInstances);
 	}
 
-	private Map<Key<?>, Object> createCacheEntry(VaadinSession vaadinSession) {
-		Map<Key<?>, Object> sessionEntry = new HashMap<Key<?>, Object>();
-		cache.put(vaadinSession, sessionEntry);
-		log.debug("created a scope cache for VaadinSessionScope with key: {}", vaadinSession);
-		return sessionEntry;
+	private ScopedInstances createCacheEntry(VaadinSession vaadinSession) {
+		return cache.computeIfAbsent(vaadinSession, s -> {
+			log.debug("created a scope cache for VaadinSessionScope with key: {}", s);
+			return new ScopedInstances();
+		});
 	}
 
 	public void startScope(VaadinSession vaadinSession) {
-		if (!cacheHasEntryFor(vaadinSession)) {
-			createCacheEntry(vaadinSession);
-		}
+		createCacheEntry(vaadinSession);
 	}
 
 	public boolean cacheHasEntryFor(VaadinSession vaadinSession) {
 		return cache.containsKey(vaadinSession);
 	}
 
+	/**
+	 * Releases the instances of the session, to be called when the session is destroyed
+	 */
 	public void releaseScope(VaadinSession vaadinSession) {
-		cache.remove(vaadinSession);
+		if (cache.remove(vaadinSession) != null) {
+			releasedScopes.increment();
+			log.debug("released the scope cache for VaadinSessionScope with key: {}", vaadinSession);
+		}
 	}
 
 	public static VaadinSessionScope getCurrent() {
@@ -100,8 +119,29 @@ public class VaadinSessionScope implements Scope {
 		cache.clear();
 	}
 
+	/**
+	 * @return the number of sessions with a scope
+	 */
+	public int getScopeCount() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the number of scopes released since the creation of the scope
+	 */
+	public long getReleasedScopeCount() {
+		return releasedScopes.sum();
+	}
+
+	/**
+	 * @return the number of instances created since the creation of the scope
+	 */
+	public long getCreatedInstanceCount() {
+		return createdInstances.sum();
+	}
+
 	@Override
 	public <T> Provider<T> scope(Key<T> key, Provider<T> unscoped) {
 		return new VaadinSessionScopeProvider<T>(this, key, unscoped);
 	}
-}
\ No newline at end of file
+}
@@ -12,12 +12,11 @@
  */
 package uk.q3c.krail.core.guice.vsscope;
 
-import java.util.Map;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
 import com.google.inject.Provider;
 import com.vaadin.server.VaadinSession;
 
@@ -40,29 +39,16 @@ class VaadinSessionScopeProvider<T> implements Provider<T> {
 
 	@Override
 	public T get() {
-		// get the scope cache for the current UI
-		log.debug("looking for a VaadinSessionScoped instance of {}", key.getClass().getName());
-
 		// get the current VaadinSession
 		VaadinSession vaadinSession = VaadinSession.getCurrent();
-
-		log.debug("looking for cache for key in current VaadinSession ");
-		Map<Key<?>, Object> scopedObjects = this.vaadinSessionScope.getScopedObjectMap(vaadinSession);
-
-		// retrieve an existing instance if possible
-
-		@SuppressWarnings("unchecked")
-		T current = (T) scopedObjects.get(key);
-
-		if (current != null) {
-			log.debug("returning existing instance of " + current.getClass().getSimpleName());
-			return current;
+		if (vaadinSession == null) {
+			throw new OutOfScopeException("Cannot access the VaadinSessionScoped " + key
+					+ " outside of a VaadinSession: the current thread is not serving a request, nor running with UI.access()");
 		}
 
-		// or create the first instance and cache it
-		current = unscoped.get();
-		scopedObjects.put(key, current);
-		log.debug("new instance of {} created, as none in cache", current.getClass().getSimpleName());
-		return current;
+		if (log.isDebugEnabled()) {
+			log.debug("looking for a VaadinSessionScoped instance of {} in {}", key, vaadinSession);
+		}
+		return this.vaadinSessionScope.get(vaadinSession, key, unscoped);
 	}
 }
@@ -0,0 +1,214 @@
+package uk.q3c.krail.core.navigate;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.primitives.Primitives;
+import com.google.inject.ConfigurationException;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata.CallbackAlternatives;
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata.CallbackMethod;
+import uk.q3c.krail.core.navigate.parameters.ParameterConverter;
+import uk.q3c.krail.core.navigate.parameters.ParameterConverters;
+import uk.q3c.krail.core.navigate.parameters.Parameters;
+import uk.q3c.krail.core.view.KrailView;
+import uk.q3c.krail.core.view.KrailViewChangeEvent;
+
+/**
+ * Binds the arguments of the navigation callbacks and of the
+ * {@link uk.q3c.krail.core.navigate.parameters.ProvidesParameter} methods.<br>
+ * The first time a method is called its binding plan is compiled: for every
+ * parameter a resolver that returns the event, the {@link Parameter}
+ * (converted from the uri by the {@link ParameterConverters} if needed) or the
+ * instance of the Guice {@link Provider} looked up once. The plans depend on
+ * the injector, so they are kept here and not in
+ * {@link NavigationCallbackMetadata}.
+ */
+@Singleton
+public class CallbackArgumentBinder {
+
+	/**
+	 * Resolves the argument for a parameter
+	 */
+	private interface ArgumentResolver {
+
+		/**
+		 * @return the argument, or {@link #NO_MATCH} if the method can't be called
+		 *         with the available parameters
+		 */
+		Object resolve(KrailView view, KrailViewChangeEvent event, Parameters parameters);
+	}
+
+	private static final Object NO_MATCH = new Object();
+
+	private final Injector injector;
+	private final ParameterConverters converters;
+	private final ConcurrentMap<CallbackMethod, ArgumentResolver[]> plans = new ConcurrentHashMap<>();
+
+	@Inject
+	public CallbackArgumentBinder(Injector injector, ParameterConverters converters) {
+		this.injector = injector;
+		this.converters = converters;
+	}
+
+	/**
+	 * The alternatives that can be called with the available parameters, without
+	 * the redundant ones (see {@link CallbackAlternatives}), in order of
+	 * specificity
+	 */
+	public Map<CallbackMethod, Object[]> match(CallbackAlternatives alternatives, KrailView view,
+			KrailViewChangeEvent event, Parameters parameters) {
+		Map<CallbackMethod, Object[]> matching = new LinkedHashMap<>();
+		boolean[] matched = new boolean[alternatives.size()];
+		alternativesLoop: for (int i = 0; i < matched.length; i++) {
+			for (int dominator : alternatives.getDominators(i)) {
+				if (matched[dominator]) {
+					continue alternativesLoop;
+				}
+			}
+			CallbackMethod method = alternatives.get(i);
+			Object[] args = bind(method, view, event, parameters);
+			if (args != null) {
+				matched[i] = true;
+				matching.put(method, args);
+			}
+		}
+		return matching;
+	}
+
+	/**
+	 * @return the arguments to call the method with, or null if the method can't
+	 *         be called with the available parameters
+	 * @throws IllegalStateException
+	 *             if a parameter can't be bound at all
+	 */
+	public Object[] bind(CallbackMethod method, KrailView view, KrailViewChangeEvent event,
+			Parameters parameters) {
+		ArgumentResolver[] plan = plans.computeIfAbsent(method, this::compile);
+		Object[] args = new Object[plan.length];
+		for (int i = 0; i < plan.length; i++) {
+			Object arg = plan[i].resolve(view, event, parameters);
+			if (arg == NO_MATCH) {
+				return null;
+			}
+			args[i] = arg;
+		}
+		return args;
+	}
+
+	private ArgumentResolver[] compile(CallbackMethod method) {
+		ArgumentResolver[] plan = new ArgumentResolver[method.getParameterCount()];
+		for (int i = 0; i < plan.length; i++) {
+			Type type = method.getParameterType(i);
+			Parameter annotation = method.getParameterAnnotation(i);
+			ArgumentResolver resolver = annotation != null ? parameterResolver(method, i, annotation)
+					: injectionResolver(method, i);
+			Class<?> rawType = rawType(type);
+			if (KrailViewChangeEvent.class.isAssignableFrom(rawType)
+					|| rawType.isAssignableFrom(KrailViewChangeEvent.class)) {
+				resolver = eventResolver(rawType, annotation, resolver);
+			}
+			plan[i] = resolver;
+		}
+		return plan;
+	}
+
+	private static ArgumentResolver eventResolver(Class<?> rawType, Parameter annotation,
+			ArgumentResolver otherwise) {
+		return (view, event, parameters) -> {
+			if (event != null && rawType.isInstance(event)) {
+				if (annotation != null) {
+					throw new IllegalStateException("parameter of type " + rawType
+							+ " match for the injection of the event, but it is also annotated as @Parameter");
+				}
+				return event;
+			}
+			return otherwise.resolve(view, event, parameters);
+		};
+	}
+
+	private ArgumentResolver parameterResolver(CallbackMethod method, int index, Parameter annotation) {
+		String key = annotation.value();
+		boolean optional = annotation.optional();
+		Type type = method.getParameterType(index);
+		// the primitives are passed boxed
+		Class<?> rawType = Primitives.wrap(rawType(type));
+		ParameterConverter<?> converter = converters.get(rawType);
+		return (view, event, parameters) -> {
+			Object value;
+			// may be calculated by a ProvidesParameter method
+			try {
+				value = parameters.get(key, view);
+			} catch (NoSuchElementException e) {
+				return optional ? null : NO_MATCH;
+			}
+
+			if (rawType.isInstance(value)) {
+				return value;
+			} else if (value instanceof String) {
+				// proviene dall'uri? Provo a convertirlo nel tipo richiesto
+				if (converter == null) {
+					throw new IllegalStateException("The parameter '" + key + "' with value '" + value
+							+ "' is not of the required type (" + type + ") and there is no converter for it.");
+				}
+				try {
+					return converter.convert((String) value);
+				} catch (RuntimeException e) {
+					throw new IllegalStateException("The parameter '" + key + "' with value '" + value
+							+ "' is not of the required type (" + type + ").", e);
+				}
+			} else {
+				throw new IllegalStateException("The parameter '" + key + "' with value '" + value + "' of type "
+						+ value.getClass() + " is not of the required type (" + type + ").");
+			}
+		};
+	}
+
+	private ArgumentResolver injectionResolver(CallbackMethod method, int index) {
+		ConfigurationException error = method.getInjectionKeyError(index);
+		for (Key<?> key : method.getInjectionKeys(index)) {
+			Provider<?> provider;
+			try {
+				provider = injector.getProvider(key);
+			} catch (ConfigurationException e) {
+				error = e;
+				continue;
+			}
+			return (view, event, parameters) -> {
+				Object instance = provider.get();
+				if (instance == null) {
+					throw new IllegalStateException("Unable to bind parameter " + index + " (of type " + key
+							+ ") of the callback method " + method);
+				}
+				return instance;
+			};
+		}
+		ConfigurationException cause = error;
+		return (view, event, parameters) -> {
+			// method parameter not annotated with @Parameter and can't retrieve with
+			// injector
+			throw new IllegalStateException("Unable to bind parameter " + index + " (of type "
+					+ method.getParameterType(index) + ") of the callback method " + method, cause);
+		};
+	}
+
+	private static Class<?> rawType(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		} else if (type instanceof ParameterizedType) {
+			return rawType(((ParameterizedType) type).getRawType());
+		} else {
+			throw new IllegalArgumentException("not implemented: " + type + " (" + type.getClass() + ")");
+		}
+	}
+}
@@ -18,6 +18,10 @@ import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.apache.shiro.authz.AuthorizationException;
 import org.apache.shiro.subject.Subject;
@@ -34,17 +38,24 @@ import com.vaadin.server.Page;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.Layout;
 import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
 import com.vaadin.ui.Window;
 
 import uk.q3c.krail.core.navigate.parameters.Parameters;
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecision;
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecisionCache;
 import uk.q3c.krail.core.navigate.sitemap.NavigationState;
 import uk.q3c.krail.core.navigate.sitemap.Sitemap;
 import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
 import uk.q3c.krail.core.navigate.sitemap.StandardPageKey;
 import uk.q3c.krail.core.navigate.sitemap.annotations.View;
+import uk.q3c.krail.core.navigate.sitemap.annotations.ViewLayout;
+import uk.q3c.krail.core.navigate.timing.NavigationPhase;
+import uk.q3c.krail.core.navigate.timing.NavigationTimers;
 import uk.q3c.krail.core.ui.ScopedUI;
 import uk.q3c.krail.core.ui.ScopedUIProvider;
 import uk.q3c.krail.core.view.AfterViewChangeListener;
+import uk.q3c.krail.core.view.AsyncLoadingView;
 import uk.q3c.krail.core.view.BeforeSecurityCheckListener;
 import uk.q3c.krail.core.view.BeforeViewChangeListener;
 import uk.q3c.krail.core.view.ErrorView;
@@ -54,7 +65,9 @@ import uk.q3c.krail.core.view.KrailViewChangeEvent.CancellableKrailViewChangeEve
 import uk.q3c.krail.core.view.KrailViewChangeEventImpl;
 import uk.q3c.krail.core.view.KrailViewChangeEventImpl.CancellableWrapper;
 import uk.q3c.krail.core.view.LayoutFactory;
+import uk.q3c.krail.core.view.PlaceholderView;
 import uk.q3c.krail.core.view.ViewBuildException;
+import uk.q3c.krail.core.view.ViewPrefetcher;
 
 /**
  * The navigator is at the heart of navigation process, and provides navigation
@@ -94,12 +107,58 @@ public class DefaultNavigator implements Navigator {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultNavigator.class);
 
+	/**
+	 * A navigation to an {@link AsyncLoadingView} waiting for the loading to
+	 * complete. Meanwhile the current view is the placeholder: it's the source of
+	 * a navigation started before the loading completes, the source view of the
+	 * pending navigation is notified when it's superseded
+	 * ({@link DefaultNavigator#cancelPendingNavigation()})
+	 */
+	private static final class PendingNavigation {
+		private final NavigationState navigationState;
+		private final KrailView sourceView;
+		private final KrailView targetView;
+		private final KrailViewChangeEvent event;
+		private final CompletableFuture<?> loading;
+		/**
+		 * {@link NavigationTimers} times
+		 */
+		private final long start;
+		private final long loadingStart;
+
+		private PendingNavigation(NavigationState navigationState, KrailView sourceView, KrailView targetView,
+				KrailViewChangeEvent event, CompletableFuture<?> loading, long start, long loadingStart) {
+			this.navigationState = navigationState;
+			this.sourceView = sourceView;
+			this.targetView = targetView;
+			this.event = event;
+			this.loading = loading;
+			this.start = start;
+			this.loadingStart = loadingStart;
+		}
+	}
+
 	@Inject
 	private Provider<DefaultNavigationCallbackHandler> defaultCallbackHandlerProvider;
 
 	@Inject
 	private LayoutFactory layoutFactory;
 
+	@Inject
+	private ViewPrefetcher viewPrefetcher;
+
+	@Inject
+	private Provider<PlaceholderView> placeholderViewProvider;
+
+	@Inject
+	private NavigationTimers navigationTimers;
+
+	@Inject
+	private AuthorizationDecisionCache authorizationCache;
+
+	@Inject
+	private Provider<Set<NavigationDenialHandler>> denialHandlersProvider;
+
 	private NavigationCallbackHandler callbackHandler;
 
 	protected NavigationStateManager stateManager;
@@ -110,6 +169,7 @@ public class DefaultNavigator implements Navigator {
 	private CancellableKrailViewChangeEvent lastCancellableNavigationEvent;
 	private NavigationState currentNavigationState;
 	private NavigationState previousNavigationState;
+	private PendingNavigation pendingNavigation;
 	private final List<BeforeSecurityCheckListener> beforeSecurityCheckListener = new LinkedList<BeforeSecurityCheckListener>();
 	private final List<BeforeViewChangeListener> beforeViewChangeListeners = new LinkedList<BeforeViewChangeListener>();
 	private final List<AfterViewChangeListener> afterViewChangeListeners = new LinkedList<AfterViewChangeListener>();
@@ -174,7 +234,9 @@ public class DefaultNavigator implements Navigator {
 		LOGGER.trace("Navigating to fragment: {}", fragment);
 
 		// set up the navigation state
+		long time = navigationTimers.start();
 		NavigationState navigationState = sitemap.buildNavigationStateFor(fragment);
+		navigationTimers.lap(NavigationPhase.SITEMAP_RESOLUTION, navigationState.getSitemapNode(), time);
 		navigateTo(navigationState);
 	}
 
@@ -231,6 +293,10 @@ public class DefaultNavigator implements Navigator {
 			return;
 		}
 
+		SitemapNode node = navigationState.getSitemapNode();
+		long start = navigationTimers.start();
+		long time = start;
+
 		KrailViewChangeEvent event = new KrailViewChangeEventImpl(this, currentNavigationState, navigationState);
 
 		CancellableWrapper cancellable = new CancellableWrapper(event);
@@ -240,27 +306,37 @@ public class DefaultNavigator implements Navigator {
 		KrailView targetView;
 		try {
 			fireBeforeSecurityCheck(cancellable);
+			time = navigationTimers.lap(NavigationPhase.BEFORE_SECURITY_CHECK, node, time);
 			if (cancellable.isCancelled()) {
 				LOGGER.debug("navigation canceled by a KrailViewChangeListener beforeSecurityCheck");
 				return;
 			}
 
 			Subject subject = subjectProvider.get();
-			// will throw an exception if not authorized
-			checkAuthorization(navigationState, subject);
+			AuthorizationDecision decision = authorizationCache.decide(node, subject);
+			time = navigationTimers.lap(NavigationPhase.AUTHORIZATION, node, time);
+			if (!decision.isGranted()) {
+				// the handlers usually navigate elsewhere (to the login page)
+				lastCancellableNavigationEvent = null;
+				denied(navigationState, decision, subject);
+				return;
+			}
 
 			// if change is blocked revert to previous state
 			fireBeforeViewChange(cancellable);
+			time = navigationTimers.lap(NavigationPhase.BEFORE_VIEW_CHANGE, node, time);
 			if (cancellable.isCancelled()) {
 				LOGGER.debug("navigation canceled by a KrailViewChangeListener beforeViewChange");
 				return;
 			}
 
+			// the placeholder, if a navigation is loading
 			sourceView = getCurrentView();
 
 			// notify befre Outbound navigation to current view
 			if (sourceView != null) {
 				fireViewBeforeOutboundNavigationEvent(sourceView, cancellable, getCallbackHandler());
+				time = navigationTimers.lap(NavigationPhase.BEFORE_OUTBOUND, node, time);
 				if (cancellable.isCancelled()) {
 					LOGGER.debug("navigation canceled by the view {} in @BeforeOutboundNavigation",
 							sourceView.getClass().getSimpleName());
@@ -270,9 +346,11 @@ public class DefaultNavigator implements Navigator {
 
 			LOGGER.debug("obtaining view instance for '{}'", navigationState);
 			targetView = navigationState.getViewInstance();
+			time = navigationTimers.lap(NavigationPhase.VIEW_CONSTRUCTION, node, time);
 
 			// notify before Inbound navigation to target view
 			fireViewBeforeInboundNavigationEvent(targetView, cancellable, getCallbackHandler());
+			time = navigationTimers.lap(NavigationPhase.BEFORE_INBOUND, node, time);
 			if (cancellable.isCancelled()) {
 				LOGGER.debug("navigation canceled by the view {} in @BeforeInboundNavigation",
 						targetView.getClass().getSimpleName());
@@ -287,6 +365,9 @@ public class DefaultNavigator implements Navigator {
 
 		checkViewRootComponentNotNull(targetView);
 
+		// a navigation still loading is superseded by this one
+		cancelPendingNavigation();
+
 		setCurrentNavigationState(navigationState);
 		// TODO: dovrei aggiungere un listener su detach() per notificare
 		// @AfterOutboundNavigation alla vista corrente (ad esempio alla chiusura della
@@ -294,24 +375,126 @@ public class DefaultNavigator implements Navigator {
 
 		//prima di cambiare pagina non dovrebero esserci Windows aperte
 		closeAllWindows();
-		
+		time = navigationTimers.lap(NavigationPhase.CLOSE_WINDOWS, node, time);
+
+		if (targetView instanceof AsyncLoadingView) {
+			CompletableFuture<?> loading = ((AsyncLoadingView) targetView).load(navigationState)
+					.toCompletableFuture();
+			if (!loading.isDone()) {
+				startPendingNavigation(
+						new PendingNavigation(navigationState, sourceView, targetView, event, loading, start, time));
+				return;
+			}
+			time = navigationTimers.lap(NavigationPhase.ASYNC_LOADING, node, time);
+			if (loading.isCompletedExceptionally()) {
+				loadingFailed(sourceView, event, loading);
+				return;
+			}
+		}
+
+		completeNavigation(navigationState, sourceView, targetView, event, start);
+	}
+
+	/**
+	 * Shows the view and notifies the view change
+	 */
+	private void completeNavigation(NavigationState navigationState, KrailView sourceView, KrailView targetView,
+			KrailViewChangeEvent event, long start) {
+		SitemapNode node = navigationState.getSitemapNode();
 		// now change the view (should not ever start a new navigation)
 		changeView(targetView);
+		long time = navigationTimers.start();
 
 		if (sourceView != null) {
 			fireViewAfterOutboundNavigationEvent(sourceView, event);
-			sourceView = null;
+			time = navigationTimers.lap(NavigationPhase.AFTER_OUTBOUND, node, time);
 		}
 
 		fireViewAfterInboundNavigationEvent(targetView, event);
+		time = navigationTimers.lap(NavigationPhase.AFTER_INBOUND, node, time);
 
 		// and tell listeners its changed
 		fireAfterViewChange(event);
+		time = navigationTimers.lap(NavigationPhase.AFTER_VIEW_CHANGE, node, time);
 
 		// make sure the page uri is updated if necessary, but do not fire any
 		// change events as we have already responded to the change
 		updateUriFragment(navigationState);
+		navigationTimers.lap(NavigationPhase.URI_FRAGMENT_UPDATE, node, time);
+		navigationTimers.lap(NavigationPhase.TOTAL, node, start);
 
+		// build the likely next views once the request has been handled
+		viewPrefetcher.navigated(previousNavigationState, navigationState);
+	}
+
+	/**
+	 * Shows the placeholder, the navigation is completed in {@link UI#access} when
+	 * the loading completes, after the session lock has been released by this
+	 * request
+	 */
+	private void startPendingNavigation(PendingNavigation pending) {
+		LOGGER.debug("view {} loading, showing the placeholder", pending.targetView.getClass().getSimpleName());
+		pendingNavigation = pending;
+		changeView(placeholderViewProvider.get());
+		updateUriFragment(pending.navigationState);
+		pending.loading.whenComplete((result, error) -> {
+			try {
+				ui.access(() -> loaded(pending));
+			} catch (UIDetachedException e) {
+				LOGGER.debug("UI detached while loading {}", pending.navigationState, e);
+			}
+		});
+	}
+
+	private void loaded(PendingNavigation pending) {
+		if (pendingNavigation != pending) {
+			// superseded by another navigation
+			return;
+		}
+		pendingNavigation = null;
+		navigationTimers.lap(NavigationPhase.ASYNC_LOADING, pending.navigationState.getSitemapNode(),
+				pending.loadingStart);
+		if (pending.loading.isCompletedExceptionally()) {
+			// the placeholder is the source of the navigation to the error view
+			loadingFailed(pending.sourceView, pending.event, pending.loading);
+		} else {
+			completeNavigation(pending.navigationState, pending.sourceView, pending.targetView, pending.event,
+					pending.start);
+		}
+	}
+
+	/**
+	 * The source view has been left anyway, then the error view is shown
+	 */
+	private void loadingFailed(KrailView sourceView, KrailViewChangeEvent event, CompletableFuture<?> loading) {
+		if (sourceView != null) {
+			fireViewAfterOutboundNavigationEvent(sourceView, event);
+		}
+		navigateToErrorView(loadingError(loading));
+	}
+
+	private void cancelPendingNavigation() {
+		PendingNavigation pending = pendingNavigation;
+		if (pending != null) {
+			LOGGER.debug("navigation to {} superseded while loading", pending.navigationState);
+			pendingNavigation = null;
+			pending.loading.cancel(false);
+			// the source view has been left anyway
+			if (pending.sourceView != null) {
+				fireViewAfterOutboundNavigationEvent(pending.sourceView, pending.event);
+			}
+		}
+	}
+
+	private static Throwable loadingError(CompletableFuture<?> loading) {
+		try {
+			loading.join();
+			throw new IllegalStateException("not completed exceptionally");
+		} catch (CompletionException e) {
+			return e.getCause() != null ? e.getCause() : e;
+		} catch (CancellationException e) {
+			return e;
+		}
 	}
 
 	@Override
@@ -324,15 +507,20 @@ public class DefaultNavigator implements Navigator {
 		sitemap.checkAuthorization(viewClass, subject);
 	}
 
-	private void checkAuthorization(NavigationState navigationState, Subject subject)
+	/**
+	 * Calls the {@link NavigationDenialHandler}s, throws the exception of the rule
+	 * if none handles the denial
+	 */
+	private void denied(NavigationState navigationState, AuthorizationDecision decision, Subject subject)
 			throws NavigationAuthorizationException {
-		SitemapNode node = navigationState.getSitemapNode();
-		assert node.getAccesControlRule() != null : node;
-		try {
-			node.getAccesControlRule().checkAuthorization(subject);
-		} catch (AuthorizationException e) {
-			throw new NavigationAuthorizationException(navigationState, e);
+		for (NavigationDenialHandler handler : denialHandlersProvider.get()) {
+			if (handler.onDenied(navigationState, decision)) {
+				LOGGER.debug("navigation to {} denied ({}), handled by {}", navigationState, decision, handler);
+				return;
+			}
 		}
+		throw new NavigationAuthorizationException(navigationState,
+				decision.toException(navigationState.getSitemapNode().getAccesControlRule(), subject));
 	}
 
 	private boolean isDifferentState(NavigationState navigationState) {
@@ -436,8 +624,9 @@ public class DefaultNavigator implements Navigator {
 	private void updateUriFragment(NavigationState targetNavigationState) {
 		assert targetNavigationState != null;
 		Page page = getUI().getPage();
-		if (!targetNavigationState.getFragment().equals(page.getUriFragment())) {
-			stateManager.setState(targetNavigationState.getFragment());
+		String fragment = targetNavigationState.getFragment();
+		if (!fragment.equals(page.getUriFragment())) {
+			stateManager.setState(fragment);
 		}
 	}
 
@@ -454,7 +643,12 @@ public class DefaultNavigator implements Navigator {
 			}
 		}
 		// display the view in the ui
-		ui.changeView(view, layoutFactory.get(view));
+		SitemapNode node = currentNavigationState != null ? currentNavigationState.getSitemapNode() : null;
+		long time = navigationTimers.start();
+		ViewLayout layout = layoutFactory.get(view);
+		time = navigationTimers.lap(NavigationPhase.LAYOUT_RESOLUTION, node, time);
+		ui.changeView(view, layout);
+		navigationTimers.lap(NavigationPhase.CHANGE_VIEW, node, time);
 	}
 
 	private void fireViewAfterOutboundNavigationEvent(KrailView view, KrailViewChangeEvent event) {
@@ -0,0 +1,413 @@
+package uk.q3c.krail.core.navigate;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.ConfigurationException;
+import com.google.inject.Key;
+
+import ru.vyarus.java.generics.resolver.GenericsResolver;
+import ru.vyarus.java.generics.resolver.context.GenericsContext;
+import uk.q3c.krail.core.navigate.parameters.ProvidesParameter;
+import uk.q3c.krail.core.view.KrailView;
+
+/**
+ * The navigation callbacks ({@link BeforeOutboundNavigation},
+ * {@link BeforeInboundNavigation}, {@link AfterOutboundNavigation},
+ * {@link AfterInboundNavigation}) and the {@link ProvidesParameter} methods of
+ * a view class, discovered once per class and kept in a {@link ClassValue}, so
+ * that a navigation doesn't need any reflection lookup.
+ */
+public final class NavigationCallbackMetadata {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NavigationCallbackMetadata.class);
+
+	@SuppressWarnings("unchecked")
+	private static final Class<? extends Annotation>[] CALLBACK_ANNOTATIONS = new Class[] {
+			BeforeOutboundNavigation.class, BeforeInboundNavigation.class, AfterOutboundNavigation.class,
+			AfterInboundNavigation.class };
+
+	private static final ClassValue<NavigationCallbackMetadata> METADATA = new ClassValue<NavigationCallbackMetadata>() {
+		@Override
+		protected NavigationCallbackMetadata computeValue(Class<?> type) {
+			return new NavigationCallbackMetadata(type);
+		}
+	};
+
+	private static final CallbackAlternatives NO_PROVIDERS = CallbackAlternatives.of(Collections.emptyList());
+
+	/**
+	 * A callback method, with its parameters resolved for the view class
+	 */
+	public static final class CallbackMethod {
+
+		private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class,
+				Object[].class);
+
+		private final Method method;
+		/**
+		 * (Object target, Object[] args) -> Object, see {@link #invoke(Object, Object[])}
+		 */
+		private final MethodHandle invoker;
+		private final Type[] parameterTypes;
+		private final Parameter[] parameterAnnotations;
+		private final Key<?>[][] injectionKeys;
+		private final ConfigurationException[] injectionKeyErrors;
+
+		private CallbackMethod(Method method, Class<?> viewClass) {
+			this.method = method;
+			method.setAccessible(true);
+			this.invoker = buildInvoker(method);
+
+			GenericsContext context = GenericsResolver.resolve(viewClass).type(method.getDeclaringClass());
+			List<Type> types = context.method(method).resolveParametersTypes();
+			this.parameterTypes = types.toArray(new Type[types.size()]);
+
+			Annotation[][] annotations = method.getParameterAnnotations();
+			this.parameterAnnotations = new Parameter[parameterTypes.length];
+			this.injectionKeys = new Key<?>[parameterTypes.length][];
+			this.injectionKeyErrors = new ConfigurationException[parameterTypes.length];
+			for (int i = 0; i < parameterTypes.length; i++) {
+				for (Annotation annotation : annotations[i]) {
+					if (annotation instanceof Parameter) {
+						parameterAnnotations[i] = (Parameter) annotation;
+					}
+				}
+				if (parameterAnnotations[i] == null) {
+					buildInjectionKeys(i, annotations[i]);
+				}
+			}
+		}
+
+		private static MethodHandle buildInvoker(Method method) {
+			try {
+				// the method is accessible, the lookup doesn't need private access
+				MethodHandle handle = MethodHandles.lookup().unreflect(method);
+				return handle.asSpreader(Object[].class, method.getParameterCount()).asType(INVOKER_TYPE);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to access " + method, e);
+			}
+		}
+
+		/**
+		 * The keys to try, in order, to inject an argument: one for every binding
+		 * annotation of the parameter, or just the type if there is none
+		 */
+		private void buildInjectionKeys(int index, Annotation[] annotations) {
+			List<Key<?>> keys = new ArrayList<>(1);
+			try {
+				for (Annotation annotation : annotations) {
+					if (isBindingAnnotation(annotation)) {
+						keys.add(Key.get(parameterTypes[index], annotation));
+					}
+				}
+				if (keys.isEmpty()) {
+					keys.add(Key.get(parameterTypes[index]));
+				}
+			} catch (ConfigurationException e) {
+				// the type can't be injected (not fully specified), the method can't
+				// be called unless the argument is the event
+				injectionKeyErrors[index] = e;
+			}
+			injectionKeys[index] = keys.toArray(new Key<?>[keys.size()]);
+		}
+
+		private static boolean isBindingAnnotation(Annotation annotation) {
+			Class<? extends Annotation> type = annotation.annotationType();
+			return type.isAnnotationPresent(BindingAnnotation.class)
+					|| type.isAnnotationPresent(javax.inject.Qualifier.class);
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		/**
+		 * Calls the method through a cached {@link MethodHandle}, that the JIT can
+		 * inline (unlike {@link Method#invoke(Object, Object...)}). The exceptions
+		 * thrown by the method are propagated as they are, not wrapped.
+		 */
+		public Object invoke(Object target, Object[] args) throws Throwable {
+			return invoker.invokeExact(target, args);
+		}
+
+		public int getParameterCount() {
+			return parameterTypes.length;
+		}
+
+		/**
+		 * The parameter types, with the type variables resolved for the view class
+		 */
+		public Type getParameterType(int index) {
+			return parameterTypes[index];
+		}
+
+		/**
+		 * @return the {@link Parameter} annotation of the parameter, or null
+		 */
+		public Parameter getParameterAnnotation(int index) {
+			return parameterAnnotations[index];
+		}
+
+		/**
+		 * @return the keys to try to inject the argument, empty for the
+		 *         {@link Parameter} annotated ones
+		 */
+		public Key<?>[] getInjectionKeys(int index) {
+			return injectionKeys[index] != null ? injectionKeys[index] : new Key<?>[0];
+		}
+
+		/**
+		 * @return why the argument can't be injected, or null
+		 */
+		public ConfigurationException getInjectionKeyError(int index) {
+			return injectionKeyErrors[index];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(method.getReturnType()).append(' ').append(method.getDeclaringClass().getName()).append('.')
+					.append(method.getName()).append('(');
+			for (int i = 0; i < parameterTypes.length; i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				if (parameterAnnotations[i] != null) {
+					sb.append("@Parameter(name='").append(parameterAnnotations[i].value()).append("',optional=")
+							.append(parameterAnnotations[i].optional()).append(") ");
+				}
+				sb.append(parameterTypes[i].getTypeName());
+			}
+			return sb.append(')').toString();
+		}
+	}
+
+	/**
+	 * Methods that are alternatives to each other: only one of them will be
+	 * called, the most specific among the ones whose arguments can be bound.
+	 * They are sorted by specificity (the methods with more parameters first) and
+	 * a method is redundant when one of its dominators can be called: a dominator
+	 * has all the parameter types of the method, and others.
+	 */
+	public static final class CallbackAlternatives extends AbstractList<CallbackMethod> {
+
+		private static final int[] NONE = new int[0];
+
+		private final CallbackMethod[] methods;
+		private final int[][] dominators;
+
+		private CallbackAlternatives(Collection<CallbackMethod> alternatives) {
+			this.methods = alternatives.toArray(new CallbackMethod[alternatives.size()]);
+			// stable, declaration order is kept between equally specific methods
+			Arrays.sort(methods, Comparator.comparingInt(CallbackMethod::getParameterCount).reversed());
+			this.dominators = new int[methods.length][];
+			for (int i = 0; i < methods.length; i++) {
+				List<Class<?>> parameters = Arrays.asList(methods[i].getMethod().getParameterTypes());
+				int[] found = new int[i];
+				int count = 0;
+				for (int j = 0; j < i; j++) {
+					Class<?>[] other = methods[j].getMethod().getParameterTypes();
+					if (other.length > parameters.size() && Arrays.asList(other).containsAll(parameters)) {
+						found[count++] = j;
+					}
+				}
+				dominators[i] = count == 0 ? NONE : Arrays.copyOf(found, count);
+			}
+		}
+
+		public static CallbackAlternatives of(Collection<CallbackMethod> alternatives) {
+			return new CallbackAlternatives(alternatives);
+		}
+
+		@Override
+		public CallbackMethod get(int index) {
+			return methods[index];
+		}
+
+		@Override
+		public int size() {
+			return methods.length;
+		}
+
+		/**
+		 * @return the indexes of the methods that make the method at
+		 *         <code>index</code> redundant, all lower than <code>index</code>
+		 */
+		public int[] getDominators(int index) {
+			return dominators[index];
+		}
+	}
+
+	/**
+	 * The annotated methods declared by a class of the hierarchy. They are
+	 * alternatives to each other: only one of them will be called.
+	 */
+	public static final class CallbackLevel {
+
+		private final Class<?> declaringClass;
+		private final CallbackAlternatives alternatives;
+
+		private CallbackLevel(Class<?> declaringClass, List<CallbackMethod> alternatives) {
+			this.declaringClass = declaringClass;
+			this.alternatives = CallbackAlternatives.of(alternatives);
+		}
+
+		public Class<?> getDeclaringClass() {
+			return declaringClass;
+		}
+
+		public CallbackAlternatives getAlternatives() {
+			return alternatives;
+		}
+	}
+
+	/**
+	 * @return the metadata of the view class (of its superclass if it is a Guice
+	 *         enhanced subclass)
+	 */
+	public static NavigationCallbackMetadata of(Class<?> viewClass) {
+		return METADATA.get(unproxy(viewClass));
+	}
+
+	private static Class<?> unproxy(Class<?> clazz) {
+		if (clazz.getSimpleName().contains("EnhancerByGuice")) {
+			return clazz.getSuperclass();
+		}
+		return clazz;
+	}
+
+	private final Class<?> viewClass;
+	private final Map<Class<? extends Annotation>, List<CallbackLevel>> callbacks = new HashMap<>();
+	private final Map<String, CallbackAlternatives> parameterProviders = new HashMap<>();
+	/**
+	 * see {@link #describe(Method)}
+	 */
+	private final ConcurrentMap<Method, CallbackMethod> describedMethods = new ConcurrentHashMap<>();
+
+	private NavigationCallbackMetadata(Class<?> viewClass) {
+		this.viewClass = viewClass;
+
+		// from the view class to the parents
+		Map<Class<? extends Annotation>, List<CallbackLevel>> levels = new LinkedHashMap<>();
+		for (Class<? extends Annotation> annotation : CALLBACK_ANNOTATIONS) {
+			levels.put(annotation, new ArrayList<>());
+		}
+		Map<String, List<CallbackMethod>> providers = new HashMap<>();
+		Class<?> clazz = viewClass;
+		while (clazz != null && clazz != Object.class) {
+			boolean callbackLevel = KrailView.class.isAssignableFrom(clazz);
+			Map<Class<? extends Annotation>, List<CallbackMethod>> alternatives = new HashMap<>();
+			for (Method method : clazz.getDeclaredMethods()) {
+				if (callbackLevel) {
+					for (Class<? extends Annotation> annotation : CALLBACK_ANNOTATIONS) {
+						if (method.isAnnotationPresent(annotation)) {
+							checkReturnType(annotation, method);
+							alternatives.computeIfAbsent(annotation, a -> new ArrayList<>())
+									.add(new CallbackMethod(method, viewClass));
+						}
+					}
+				}
+				ProvidesParameter providesParameter = method.getAnnotation(ProvidesParameter.class);
+				if (providesParameter != null) {
+					providers.computeIfAbsent(providesParameter.name(), n -> new ArrayList<>())
+							.add(new CallbackMethod(method, viewClass));
+				}
+			}
+			for (Map.Entry<Class<? extends Annotation>, List<CallbackMethod>> entry : alternatives.entrySet()) {
+				levels.get(entry.getKey()).add(new CallbackLevel(clazz, entry.getValue()));
+			}
+			clazz = clazz.getSuperclass();
+		}
+
+		for (Map.Entry<String, List<CallbackMethod>> entry : providers.entrySet()) {
+			parameterProviders.put(entry.getKey(), CallbackAlternatives.of(entry.getValue()));
+		}
+		for (Map.Entry<Class<? extends Annotation>, List<CallbackLevel>> entry : levels.entrySet()) {
+			// the callbacks of the parents are called first
+			List<CallbackLevel> list = entry.getValue();
+			Collections.reverse(list);
+			callbacks.put(entry.getKey(), Collections.unmodifiableList(list));
+		}
+
+		if (LOGGER.isDebugEnabled()) {
+			report();
+		}
+	}
+
+	private static void checkReturnType(Class<? extends Annotation> annotation, Method method) {
+		if (!method.getReturnType().equals(Void.TYPE)) {
+			throw new IllegalStateException(
+					"The method annotated with " + annotation.getName() + " should return void: " + method);
+		}
+	}
+
+	private void report() {
+		StringBuilder sb = new StringBuilder("navigation callbacks of " + viewClass + ":\n");
+		for (Map.Entry<Class<? extends Annotation>, List<CallbackLevel>> entry : callbacks.entrySet()) {
+			for (CallbackLevel level : entry.getValue()) {
+				sb.append("  @" + entry.getKey().getSimpleName() + " in " + level.getDeclaringClass() + "\n");
+				for (CallbackMethod m : level.getAlternatives()) {
+					sb.append("     " + m + "\n");
+				}
+			}
+		}
+		for (Map.Entry<String, CallbackAlternatives> entry : parameterProviders.entrySet()) {
+			sb.append("  parameter '" + entry.getKey() + "' provided by " + entry.getValue() + "\n");
+		}
+		LOGGER.debug(sb.toString());
+	}
+
+	public Class<?> getViewClass() {
+		return viewClass;
+	}
+
+	/**
+	 * @return the levels of the hierarchy declaring a callback with the annotation,
+	 *         in invocation order (from the parents to the view class)
+	 */
+	public List<CallbackLevel> getCallbacks(Class<? extends Annotation> annotation) {
+		List<CallbackLevel> levels = callbacks.get(annotation);
+		if (levels == null) {
+			throw new IllegalArgumentException(annotation + " is not a navigation callback annotation");
+		}
+		return levels;
+	}
+
+	/**
+	 * @return the {@link ProvidesParameter} methods for the parameter (empty if
+	 *         none)
+	 */
+	public CallbackAlternatives getParameterProviders(String parameter) {
+		CallbackAlternatives providers = parameterProviders.get(parameter);
+		return providers != null ? providers : NO_PROVIDERS;
+	}
+
+	/**
+	 * The descriptor of any method of the view class hierarchy, built the first
+	 * time it is requested
+	 */
+	public CallbackMethod describe(Method method) {
+		return describedMethods.computeIfAbsent(method, m -> new CallbackMethod(m, viewClass));
+	}
+}
@@ -0,0 +1,20 @@
+package uk.q3c.krail.core.navigate;
+
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecision;
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+
+/**
+ * Handles a navigation denied by the {@link uk.q3c.krail.core.navigate.sitemap.AccesControl} rule of the target
+ * node, without an exception: the navigator calls the handlers until one handles the denial, and throws a
+ * {@link NavigationAuthorizationException} (handled by the {@link uk.q3c.krail.core.guice.errors.ErrorHandler}s)
+ * only if none does.
+ */
+public interface NavigationDenialHandler {
+
+	/**
+	 * @param decision
+	 *            the reason of the denial, never {@link AuthorizationDecision#GRANTED}
+	 * @return true if handled
+	 */
+	boolean onDenied(NavigationState targetNavigationState, AuthorizationDecision decision);
+}
@@ -0,0 +1,60 @@
+package uk.q3c.krail.core.navigate;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.inject.Singleton;
+
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+
+/**
+ * The number of navigations observed from a node to another, in all the UIs.
+ * The nodes are the ones of the sitemap, so the counters are bounded by the
+ * sitemap size.
+ */
+@Singleton
+public class NavigationTransitions {
+
+	private final ConcurrentMap<SitemapNode, ConcurrentMap<SitemapNode, LongAdder>> transitions = new ConcurrentHashMap<>();
+
+	public void record(SitemapNode from, SitemapNode to) {
+		if (from == null || to == null || from == to) {
+			return;
+		}
+		transitions.computeIfAbsent(from, node -> new ConcurrentHashMap<>())
+				.computeIfAbsent(to, node -> new LongAdder()).increment();
+	}
+
+	public long getCount(SitemapNode from, SitemapNode to) {
+		Map<SitemapNode, LongAdder> targets = transitions.get(from);
+		LongAdder count = targets != null ? targets.get(to) : null;
+		return count != null ? count.sum() : 0;
+	}
+
+	/**
+	 * @return at most <code>max</code> nodes navigated to from the node, the most
+	 *         frequent first
+	 */
+	public List<SitemapNode> getMostFrequentFrom(SitemapNode from, int max) {
+		Map<SitemapNode, LongAdder> targets = transitions.get(from);
+		if (targets == null || max <= 0) {
+			return Collections.emptyList();
+		}
+		List<Map.Entry<SitemapNode, Long>> counts = new ArrayList<>(targets.size());
+		for (Map.Entry<SitemapNode, LongAdder> entry : targets.entrySet()) {
+			counts.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+		}
+		counts.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+		List<SitemapNode> mostFrequent = new ArrayList<>(Math.min(max, counts.size()));
+		for (int i = 0; i < counts.size() && i < max; i++) {
+			mostFrequent.add(counts.get(i).getKey());
+		}
+		return mostFrequent;
+	}
+}
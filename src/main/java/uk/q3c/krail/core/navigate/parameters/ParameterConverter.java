@@ -0,0 +1,20 @@
+package uk.q3c.krail.core.navigate.parameters;
+
+/**
+ * Converts the String value of an uri parameter to the type required by a
+ * navigation callback (or a ProvidesParameter method).<br>
+ * Add one to the <code>ParameterConverter</code> multibinder (see
+ * <code>SitemapModule.bindParameterConverters</code>) for the types that
+ * {@link ParameterConverters} can't convert by itself, or to replace its
+ * conversion.
+ */
+public interface ParameterConverter<T> {
+
+	Class<T> getType();
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             (or any other RuntimeException) if the value is not valid
+	 */
+	T convert(String value);
+}
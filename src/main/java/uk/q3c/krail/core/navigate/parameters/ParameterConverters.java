@@ -0,0 +1,242 @@
+package uk.q3c.krail.core.navigate.parameters;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.primitives.Primitives;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The registry of the {@link ParameterConverter}s, with a converter per type
+ * built the first time the type is requested:
+ * <ul>
+ * <li>the converters bound in the multibinder, that have the precedence</li>
+ * <li>the primitives and their wrappers (the same converter for both)</li>
+ * <li>the enums, with a table of the constants by name</li>
+ * <li>the types with a static <code>valueOf</code>, <code>parse</code>,
+ * <code>of</code> or <code>fromString</code> factory method taking a String
+ * (or a CharSequence), like UUID or LocalDate, otherwise a public String
+ * constructor</li>
+ * </ul>
+ */
+@Singleton
+public class ParameterConverters {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParameterConverters.class);
+
+	private static final String[] FACTORY_METHODS = { "valueOf", "parse", "of", "fromString" };
+
+	private static final MethodType CONVERTER_TYPE = MethodType.methodType(Object.class, String.class);
+
+	private final Map<Class<?>, ParameterConverter<?>> bound = new HashMap<>();
+	/**
+	 * The converter of each type requested, empty if the type can't be converted
+	 * (the map can't hold null)
+	 */
+	private final ConcurrentMap<Class<?>, Optional<ParameterConverter<?>>> converters = new ConcurrentHashMap<>();
+
+	@Inject
+	public ParameterConverters(Set<ParameterConverter<?>> boundConverters) {
+		for (ParameterConverter<?> converter : boundConverters) {
+			ParameterConverter<?> previous = bound.put(converter.getType(), converter);
+			if (previous != null) {
+				LOGGER.warn("more than one converter bound for {}: {} replaced by {}", converter.getType(), previous,
+						converter);
+			}
+		}
+	}
+
+	/**
+	 * @return the converter for the type (for a primitive type, it returns the
+	 *         wrapper), or null if the type can't be converted
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ParameterConverter<T> get(Class<T> type) {
+		// the converter built for a type converts to that type (or its wrapper)
+		return (ParameterConverter<T>) converters.computeIfAbsent(type, this::build).orElse(null);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the type can't be converted, or the value is not valid
+	 */
+	public <T> T convert(String value, Class<T> type) {
+		ParameterConverter<T> converter = get(type);
+		if (converter == null) {
+			throw new IllegalArgumentException("No converter from String to " + type.getName());
+		}
+		return converter.convert(value);
+	}
+
+	private Optional<ParameterConverter<?>> build(Class<?> type) {
+		Class<?> wrapper = Primitives.wrap(type);
+		ParameterConverter<?> converter = bound.get(type);
+		if (converter == null) {
+			converter = bound.get(wrapper);
+		}
+		if (converter == null) {
+			converter = builtIn(wrapper);
+		}
+		if (converter == null && wrapper.isEnum()) {
+			converter = enumConverter(wrapper.asSubclass(Enum.class));
+		}
+		if (converter == null) {
+			converter = reflective(wrapper);
+		}
+		LOGGER.debug("converter for {}: {}", type, converter);
+		return Optional.ofNullable(converter);
+	}
+
+	/**
+	 * The primitives (wrappers) and String, parsed without reflection
+	 */
+	private static ParameterConverter<?> builtIn(Class<?> type) {
+		if (type == String.class) {
+			return converter(String.class, value -> value);
+		} else if (type == Integer.class) {
+			return converter(Integer.class, Integer::valueOf);
+		} else if (type == Long.class) {
+			return converter(Long.class, Long::valueOf);
+		} else if (type == Boolean.class) {
+			return converter(Boolean.class, ParameterConverters::parseBoolean);
+		} else if (type == Double.class) {
+			return converter(Double.class, Double::valueOf);
+		} else if (type == Float.class) {
+			return converter(Float.class, Float::valueOf);
+		} else if (type == Short.class) {
+			return converter(Short.class, Short::valueOf);
+		} else if (type == Byte.class) {
+			return converter(Byte.class, Byte::valueOf);
+		} else if (type == Character.class) {
+			return converter(Character.class, ParameterConverters::parseCharacter);
+		}
+		return null;
+	}
+
+	/**
+	 * Unlike {@link Boolean#valueOf(String)}, the values other than true and
+	 * false are not valid
+	 */
+	private static Boolean parseBoolean(String value) {
+		if ("true".equalsIgnoreCase(value)) {
+			return Boolean.TRUE;
+		} else if ("false".equalsIgnoreCase(value)) {
+			return Boolean.FALSE;
+		}
+		throw new IllegalArgumentException("not a boolean: '" + value + "'");
+	}
+
+	private static Character parseCharacter(String value) {
+		if (value.length() != 1) {
+			throw new IllegalArgumentException("not a single character: '" + value + "'");
+		}
+		return value.charAt(0);
+	}
+
+	private static <E extends Enum<E>> ParameterConverter<E> enumConverter(Class<E> type) {
+		Map<String, E> constants = new HashMap<>();
+		for (E constant : type.getEnumConstants()) {
+			constants.put(constant.name(), constant);
+		}
+		return converter(type, value -> {
+			E constant = constants.get(value);
+			if (constant == null) {
+				throw new IllegalArgumentException("No enum constant " + type.getName() + "." + value);
+			}
+			return constant;
+		});
+	}
+
+	/**
+	 * A static factory method, or the String constructor
+	 */
+	private static ParameterConverter<?> reflective(Class<?> type) {
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		for (String name : FACTORY_METHODS) {
+			for (Class<?> parameterType : new Class<?>[] { String.class, CharSequence.class }) {
+				Method factory;
+				try {
+					factory = type.getMethod(name, parameterType);
+				} catch (NoSuchMethodException e) {
+					continue;
+				}
+				if (Modifier.isStatic(factory.getModifiers()) && type.isAssignableFrom(factory.getReturnType())) {
+					try {
+						return handleConverter(type, lookup.unreflect(factory), factory.toString());
+					} catch (IllegalAccessException e) {
+						LOGGER.debug("{} not accessible", factory, e);
+					}
+				}
+			}
+		}
+		try {
+			return handleConverter(type,
+					lookup.findConstructor(type, MethodType.methodType(void.class, String.class)),
+					type.getName() + "(String)");
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private static <T> ParameterConverter<T> handleConverter(Class<T> type, MethodHandle handle, String description) {
+		MethodHandle converter = handle.asType(CONVERTER_TYPE);
+		return new ParameterConverter<T>() {
+			@Override
+			public Class<T> getType() {
+				return type;
+			}
+
+			@Override
+			public T convert(String value) {
+				try {
+					return type.cast((Object) converter.invokeExact(value));
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new IllegalArgumentException("Unable to convert '" + value + "' with " + description, e);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return description;
+			}
+		};
+	}
+
+	private interface Parser<T> {
+		T parse(String value);
+	}
+
+	private static <T> ParameterConverter<T> converter(Class<T> type, Parser<T> parser) {
+		return new ParameterConverter<T>() {
+			@Override
+			public Class<T> getType() {
+				return type;
+			}
+
+			@Override
+			public T convert(String value) {
+				return parser.parse(value);
+			}
+
+			@Override
+			public String toString() {
+				return "built-in converter for " + type.getName();
+			}
+		};
+	}
+}
@@ -1,11 +1,12 @@
 package uk.q3c.krail.core.navigate.sitemap;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.shiro.authz.AuthorizationException;
-import org.apache.shiro.authz.UnauthenticatedException;
-import org.apache.shiro.authz.UnauthorizedException;
 import org.apache.shiro.authz.annotation.Logical;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.apache.shiro.authz.permission.WildcardPermission;
@@ -17,6 +18,11 @@ public interface AccesControl {
 
 	static class Public implements AccesControl {
 
+		@Override
+		public AuthorizationDecision decide(Subject subject) {
+			return AuthorizationDecision.GRANTED;
+		}
+
 		@Override
 		public void checkAuthorization(Subject subject)
 				throws AuthorizationException {
@@ -32,12 +38,15 @@ public interface AccesControl {
 
 	static class Authenticated implements AccesControl {
 
+		@Override
+		public AuthorizationDecision decide(Subject subject) {
+			return subject.isAuthenticated() ? AuthorizationDecision.GRANTED : AuthorizationDecision.UNAUTHENTICATED;
+		}
+
 		@Override
 		public void checkAuthorization(Subject subject)
 				throws AuthorizationException {
-			if (!subject.isAuthenticated()) {
-				throw new UnauthenticatedException();
-			}
+			decide(subject).check(this);
 		}
 
 		@Override
@@ -49,11 +58,17 @@ public interface AccesControl {
 	static class Guest implements AccesControl {
 
 		@Override
-		public void checkAuthorization(Subject subject)
-				throws AuthorizationException {
+		public AuthorizationDecision decide(Subject subject) {
 			if (!((!subject.isAuthenticated()) && (!subject.isRemembered()))) {
-				throw new UnauthorizedException();
+				return AuthorizationDecision.UNAUTHORIZED;
 			}
+			return AuthorizationDecision.GRANTED;
+		}
+
+		@Override
+		public void checkAuthorization(Subject subject)
+				throws AuthorizationException {
+			decide(subject).check(this);
 		}
 
 		@Override
@@ -62,41 +77,59 @@ public interface AccesControl {
 		}
 	}
 
+	/**
+	 * The permission strings are parsed once, as {@link WildcardPermission}s (the
+	 * default permission resolver of Shiro), not by the realm at each check
+	 */
 	static class Permission implements AccesControl {
 
-		private String[] permissions;
+		private final String[] permissions;
+		private final List<org.apache.shiro.authz.Permission> parsed;
 		private Logical logical;
 
 		public Permission(String[] permissions, Logical logical) {
 			this.permissions = permissions;
 			this.logical = logical;
+			List<org.apache.shiro.authz.Permission> parsed = new ArrayList<>(permissions.length);
+			for (String permission : permissions) {
+				parsed.add(new WildcardPermission(permission));
+			}
+			this.parsed = Collections.unmodifiableList(parsed);
 		}
 
+		/**
+		 * A subject without principals is not authenticated, as for the checks of
+		 * Shiro
+		 */
 		@Override
-		public void checkAuthorization(Subject subject)
-				throws AuthorizationException {
-			if (permissions.length == 1) {
-				subject.checkPermission(permissions[0]);
-				return;
+		public AuthorizationDecision decide(Subject subject) {
+			if (subject.getPrincipals() == null || subject.getPrincipals().isEmpty()) {
+				return AuthorizationDecision.UNAUTHENTICATED;
 			}
-			if (Logical.AND.equals(logical)) {
-				subject.checkPermissions(permissions);
-				return;
+			if (parsed.size() == 1 || Logical.AND.equals(logical)) {
+				return subject.isPermittedAll(parsed) ? AuthorizationDecision.GRANTED
+						: AuthorizationDecision.UNAUTHORIZED;
 			}
-			if (Logical.OR.equals(logical)) {
-				// Avoid processing exceptions unnecessarily - "delay" throwing
-				// the exception by calling hasRole first
-				boolean hasAtLeastOnePermission = false;
-				for (String permission : permissions) {
-					if (subject.isPermitted(permission)) {
-						hasAtLeastOnePermission = true;
-					}
+			for (org.apache.shiro.authz.Permission permission : parsed) {
+				if (subject.isPermitted(permission)) {
+					return AuthorizationDecision.GRANTED;
 				}
-				// Cause the exception if none of the role match, note that the
-				// exception message will be a bit misleading
-				if (!hasAtLeastOnePermission)
-					subject.checkPermission(permissions[0]);
 			}
+			return AuthorizationDecision.UNAUTHORIZED;
+		}
+
+		@Override
+		public void checkAuthorization(Subject subject)
+				throws AuthorizationException {
+			decide(subject).check(this);
+		}
+
+		List<org.apache.shiro.authz.Permission> getPermissions() {
+			return parsed;
+		}
+
+		Logical getLogical() {
+			return logical;
 		}
 		
 		@Override
@@ -122,24 +155,39 @@ public interface AccesControl {
 			this.logical = logical;
 		}
 
+		/**
+		 * A subject without principals is not authenticated, as for the checks of
+		 * Shiro
+		 */
+		@Override
+		public AuthorizationDecision decide(Subject subject) {
+			if (subject.getPrincipals() == null || subject.getPrincipals().isEmpty()) {
+				return AuthorizationDecision.UNAUTHENTICATED;
+			}
+			if (roles.length == 1 || Logical.AND.equals(logical)) {
+				return subject.hasAllRoles(Arrays.asList(roles)) ? AuthorizationDecision.GRANTED
+						: AuthorizationDecision.UNAUTHORIZED;
+			}
+			for (String role : roles) {
+				if (subject.hasRole(role)) {
+					return AuthorizationDecision.GRANTED;
+				}
+			}
+			return AuthorizationDecision.UNAUTHORIZED;
+		}
+
 		@Override
 		public void checkAuthorization(Subject subject)
 				throws AuthorizationException {
-			if (roles.length == 1) {
-	            subject.checkRole(roles[0]);
-	            return;
-	        }
-	        if (Logical.AND.equals(logical)) {
-	        	subject.checkRoles(Arrays.asList(roles));
-	            return;
-	        }
-	        if (Logical.OR.equals(logical)) {
-	            // Avoid processing exceptions unnecessarily - "delay" throwing the exception by calling hasRole first
-	            boolean hasAtLeastOneRole = false;
-	            for (String role : roles) if (subject.hasRole(role)) hasAtLeastOneRole = true;
-	            // Cause the exception if none of the role match, note that the exception message will be a bit misleading
-	            if (!hasAtLeastOneRole) subject.checkRole(roles[0]);
-	        }
+			decide(subject).check(this);
+		}
+
+		List<String> getRoles() {
+			return Collections.unmodifiableList(Arrays.asList(roles));
+		}
+
+		Logical getLogical() {
+			return logical;
 		}
 
 		@Override
@@ -154,11 +202,17 @@ public interface AccesControl {
 	static class User implements AccesControl {
 
 		@Override
-		public void checkAuthorization(Subject subject)
-				throws AuthorizationException {
+		public AuthorizationDecision decide(Subject subject) {
 			if(!(subject.isAuthenticated() || subject.isRemembered())) {
-				throw new UnauthorizedException();
+				return AuthorizationDecision.UNAUTHORIZED;
 			}
+			return AuthorizationDecision.GRANTED;
+		}
+
+		@Override
+		public void checkAuthorization(Subject subject)
+				throws AuthorizationException {
+			decide(subject).check(this);
 		}
 
 		@Override
@@ -172,7 +226,28 @@ public interface AccesControl {
 	public static final Guest GUEST = new Guest();
 	public static final User USER = new User();
 
+	/**
+	 * @throws AuthorizationException
+	 *             if the subject is not authorized, the exception of
+	 *             {@link AuthorizationDecision#check(AccesControl)} for the rules
+	 *             of this interface
+	 */
 	public abstract void checkAuthorization(Subject subject)
 			throws AuthorizationException;
 
+	/**
+	 * The outcome of the rule, without exceptions. The rules of this interface
+	 * decide first and throw from the decision, the other rules are adapted from
+	 * the exception of {@link #checkAuthorization(Subject)}: override it to avoid
+	 * them.
+	 */
+	default AuthorizationDecision decide(Subject subject) {
+		try {
+			checkAuthorization(subject);
+			return AuthorizationDecision.GRANTED;
+		} catch (AuthorizationException e) {
+			return AuthorizationDecision.of(e);
+		}
+	}
+
 }
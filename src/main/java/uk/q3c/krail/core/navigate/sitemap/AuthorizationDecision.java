@@ -0,0 +1,81 @@
+package uk.q3c.krail.core.navigate.sitemap;
+
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.authz.UnauthenticatedException;
+import org.apache.shiro.authz.UnauthorizedException;
+import org.apache.shiro.subject.Subject;
+
+/**
+ * The outcome of an {@link AccesControl} rule, without the cost of an
+ * exception: a denial is turned into the exception the rule would have thrown
+ * only by {@link #check(AccesControl)} and {@link #toException(AccesControl)}
+ * (or {@link #toException(AccesControl, Subject)}), where an exception is
+ * required.
+ */
+public enum AuthorizationDecision {
+
+	GRANTED,
+	/**
+	 * The subject must be authenticated (or have principals) to be authorized
+	 */
+	UNAUTHENTICATED,
+	/**
+	 * The subject has been identified, but it's not authorized
+	 */
+	UNAUTHORIZED;
+
+	public boolean isGranted() {
+		return this == GRANTED;
+	}
+
+	/**
+	 * @throws AuthorizationException
+	 *             the exception of the decision, if denied
+	 */
+	public void check(AccesControl rule) throws AuthorizationException {
+		if (this != GRANTED) {
+			throw toException(rule);
+		}
+	}
+
+	/**
+	 * @return an {@link UnauthenticatedException} or an
+	 *         {@link UnauthorizedException}, null if granted
+	 */
+	public AuthorizationException toException(AccesControl rule) {
+		if (this == UNAUTHENTICATED) {
+			return new UnauthenticatedException("Subject is not authenticated for " + rule);
+		}
+		if (this == UNAUTHORIZED) {
+			return new UnauthorizedException("Subject is not authorized for " + rule);
+		}
+		return null;
+	}
+
+	/**
+	 * The exception the rule throws for the subject: the one of a rule adapted by
+	 * {@link AccesControl#decide(Subject)} may not be the exception of the
+	 * decision. The exception of the decision if the rule no longer denies (this
+	 * decision has been cached).
+	 * 
+	 * @return null if granted
+	 */
+	public AuthorizationException toException(AccesControl rule, Subject subject) {
+		if (this == GRANTED) {
+			return null;
+		}
+		try {
+			rule.checkAuthorization(subject);
+		} catch (AuthorizationException e) {
+			return e;
+		}
+		return toException(rule);
+	}
+
+	/**
+	 * The decision of a thrown exception
+	 */
+	public static AuthorizationDecision of(AuthorizationException e) {
+		return e instanceof UnauthenticatedException ? UNAUTHENTICATED : UNAUTHORIZED;
+	}
+}
@@ -0,0 +1,161 @@
+package uk.q3c.krail.core.navigate.sitemap;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.Subject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.AuthenticationListener;
+import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.FailedLoginEvent;
+import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.LogoutEvent;
+import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.SuccesfulLoginEvent;
+
+/**
+ * The outcome of the {@link AccesControl} rules of the sitemap nodes, per
+ * principal (and authentication state, that the rules depend on), so that the
+ * realms are not queried again for every navigation and every menu item.<br>
+ * The decisions of a principal are discarded when it logs in or out, and at
+ * most {@link #DEFAULT_EXPIRY_MINUTES} minutes after they have been taken: an
+ * application that changes the permissions of a user should call
+ * {@link #invalidate(PrincipalCollection)} (or {@link #invalidateAll()}) to
+ * apply them at once.
+ */
+@Singleton
+public class AuthorizationDecisionCache implements AuthenticationListener {
+
+	public static final long DEFAULT_MAXIMUM_SUBJECTS = 10_000;
+	public static final long DEFAULT_EXPIRY_MINUTES = 5;
+
+	/**
+	 * The principals and the state the rules depend on, the anonymous subjects
+	 * have null principals
+	 */
+	private static final class SubjectKey {
+		private final PrincipalCollection principals;
+		private final boolean authenticated;
+		private final boolean remembered;
+
+		SubjectKey(Subject subject) {
+			PrincipalCollection principals = subject.getPrincipals();
+			this.principals = principals != null && !principals.isEmpty() ? principals : null;
+			this.authenticated = subject.isAuthenticated();
+			this.remembered = subject.isRemembered();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SubjectKey)) {
+				return false;
+			}
+			SubjectKey other = (SubjectKey) obj;
+			return authenticated == other.authenticated && remembered == other.remembered
+					&& Objects.equals(principals, other.principals);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(principals, authenticated, remembered);
+		}
+	}
+
+	/**
+	 * The decisions of a subject key
+	 */
+	private static final class Decisions {
+		private final ConcurrentMap<SitemapNode, AuthorizationDecision> nodes = new ConcurrentHashMap<>();
+		private volatile Set<SitemapNode> authorizedNodes;
+	}
+
+	private final Cache<SubjectKey, Decisions> decisions;
+
+	@Inject
+	public AuthorizationDecisionCache() {
+		this(DEFAULT_MAXIMUM_SUBJECTS, DEFAULT_EXPIRY_MINUTES, TimeUnit.MINUTES);
+	}
+
+	public AuthorizationDecisionCache(long maximumSubjects, long expiry, TimeUnit unit) {
+		decisions = CacheBuilder.newBuilder().maximumSize(maximumSubjects).expireAfterWrite(expiry, unit).build();
+	}
+
+	/**
+	 * @throws AuthorizationException
+	 *             if the subject is not authorized to the node, see
+	 *             {@link AuthorizationDecision#toException(AccesControl, Subject)}
+	 */
+	public void checkAuthorization(SitemapNode node, Subject subject) throws AuthorizationException {
+		AuthorizationDecision decision = decide(node, subject);
+		if (!decision.isGranted()) {
+			throw decision.toException(node.getAccesControlRule(), subject);
+		}
+	}
+
+	public boolean isAuthorized(SitemapNode node, Subject subject) {
+		return decide(node, subject).isGranted();
+	}
+
+	public AuthorizationDecision decide(SitemapNode node, Subject subject) {
+		return decisionsOf(subject).nodes.computeIfAbsent(node, n -> n.getAccesControlRule().decide(subject));
+	}
+
+	/**
+	 * @param resolver
+	 *            computes the nodes the subject is authorized to, if not cached
+	 * @return the nodes the subject is authorized to
+	 */
+	public Set<SitemapNode> getAuthorizedNodes(Subject subject, Function<Subject, Set<SitemapNode>> resolver) {
+		Decisions subjectDecisions = decisionsOf(subject);
+		Set<SitemapNode> authorized = subjectDecisions.authorizedNodes;
+		if (authorized == null) {
+			authorized = resolver.apply(subject);
+			subjectDecisions.authorizedNodes = authorized;
+			for (SitemapNode node : authorized) {
+				subjectDecisions.nodes.putIfAbsent(node, AuthorizationDecision.GRANTED);
+			}
+		}
+		return authorized;
+	}
+
+	/**
+	 * Discards the decisions taken for the principals, in any authentication
+	 * state
+	 */
+	public void invalidate(PrincipalCollection principals) {
+		if (principals == null || principals.isEmpty()) {
+			return;
+		}
+		decisions.asMap().keySet().removeIf(key -> principals.equals(key.principals));
+	}
+
+	public void invalidateAll() {
+		decisions.invalidateAll();
+	}
+
+	@Override
+	public void onSuccess(SuccesfulLoginEvent event) {
+		invalidate(event.getSubject().getPrincipals());
+	}
+
+	@Override
+	public void onFailure(FailedLoginEvent event) {
+	}
+
+	@Override
+	public void onLogout(LogoutEvent event) {
+		invalidate(event.getLoggedOutSubjectPrincipals());
+	}
+
+	private Decisions decisionsOf(Subject subject) {
+		return decisions.asMap().computeIfAbsent(new SubjectKey(subject), key -> new Decisions());
+	}
+}
@@ -0,0 +1,149 @@
+package uk.q3c.krail.core.navigate.sitemap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.annotation.Logical;
+import org.apache.shiro.subject.Subject;
+
+/**
+ * The nodes of a sitemap grouped by the requirements of their
+ * {@link AccesControl} rules: a bit set of nodes per kind of rule, per role and
+ * per permission. The nodes a subject is authorized to are found with one
+ * batched role check, one batched permission check and a few bit set
+ * operations, without exceptions. Only the nodes with a rule of another class
+ * (including the subclasses of the rules of {@link AccesControl}) are checked
+ * one by one.<br>
+ * Immutable, built from the nodes as they are when it's created.
+ */
+final class AuthorizationIndex {
+
+	private final SitemapNode[] nodes;
+	private final BitSet publicNodes = new BitSet();
+	private final BitSet authenticatedNodes = new BitSet();
+	private final BitSet guestNodes = new BitSet();
+	private final BitSet userNodes = new BitSet();
+	/**
+	 * the nodes requiring all their roles, or any of them
+	 */
+	private final BitSet allRolesNodes = new BitSet();
+	private final BitSet anyRoleNodes = new BitSet();
+	private final List<String> roles;
+	private final BitSet[] nodesByRole;
+	private final BitSet allPermissionsNodes = new BitSet();
+	private final BitSet anyPermissionNodes = new BitSet();
+	private final List<Permission> permissions;
+	private final BitSet[] nodesByPermission;
+	private final BitSet otherNodes = new BitSet();
+
+	AuthorizationIndex(Collection<? extends SitemapNode> sitemapNodes) {
+		nodes = sitemapNodes.toArray(new SitemapNode[0]);
+		Map<String, BitSet> byRole = new LinkedHashMap<>();
+		Map<Permission, BitSet> byPermission = new LinkedHashMap<>();
+		for (int i = 0; i < nodes.length; i++) {
+			AccesControl rule = nodes[i].getAccesControlRule();
+			// a subclass may override the checks
+			Class<?> ruleClass = rule != null ? rule.getClass() : null;
+			if (ruleClass == AccesControl.Public.class) {
+				publicNodes.set(i);
+			} else if (ruleClass == AccesControl.Authenticated.class) {
+				authenticatedNodes.set(i);
+			} else if (ruleClass == AccesControl.Guest.class) {
+				guestNodes.set(i);
+			} else if (ruleClass == AccesControl.User.class) {
+				userNodes.set(i);
+			} else if (ruleClass == AccesControl.Roles.class) {
+				AccesControl.Roles roles = (AccesControl.Roles) rule;
+				requiring(roles.getLogical(), roles.getRoles().size(), allRolesNodes, anyRoleNodes).set(i);
+				for (String role : roles.getRoles()) {
+					byRole.computeIfAbsent(role, r -> new BitSet()).set(i);
+				}
+			} else if (ruleClass == AccesControl.Permission.class) {
+				AccesControl.Permission permission = (AccesControl.Permission) rule;
+				requiring(permission.getLogical(), permission.getPermissions().size(), allPermissionsNodes,
+						anyPermissionNodes).set(i);
+				for (Permission p : permission.getPermissions()) {
+					byPermission.computeIfAbsent(p, r -> new BitSet()).set(i);
+				}
+			} else if (rule != null) {
+				otherNodes.set(i);
+			}
+		}
+		roles = new ArrayList<>(byRole.keySet());
+		nodesByRole = byRole.values().toArray(new BitSet[0]);
+		permissions = new ArrayList<>(byPermission.keySet());
+		nodesByPermission = byPermission.values().toArray(new BitSet[0]);
+	}
+
+	/**
+	 * @return the nodes the subject is authorized to, in the order of the
+	 *         sitemap
+	 */
+	Set<SitemapNode> authorizedNodes(Subject subject) {
+		BitSet authorized = authorized(subject);
+		Set<SitemapNode> result = new LinkedHashSet<>(authorized.cardinality() * 2);
+		for (int i = authorized.nextSetBit(0); i >= 0; i = authorized.nextSetBit(i + 1)) {
+			result.add(nodes[i]);
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	BitSet authorized(Subject subject) {
+		BitSet authorized = (BitSet) publicNodes.clone();
+		boolean authenticated = subject.isAuthenticated();
+		boolean remembered = subject.isRemembered();
+		if (authenticated) {
+			authorized.or(authenticatedNodes);
+		}
+		if (!authenticated && !remembered) {
+			authorized.or(guestNodes);
+		}
+		if (authenticated || remembered) {
+			authorized.or(userNodes);
+		}
+		if (!roles.isEmpty()) {
+			authorized.or(granted(subject.hasRoles(roles), nodesByRole, allRolesNodes, anyRoleNodes));
+		}
+		if (!permissions.isEmpty()) {
+			authorized.or(granted(subject.isPermitted(permissions), nodesByPermission, allPermissionsNodes,
+					anyPermissionNodes));
+		}
+		for (int i = otherNodes.nextSetBit(0); i >= 0; i = otherNodes.nextSetBit(i + 1)) {
+			if (nodes[i].getAccesControlRule().decide(subject).isGranted()) {
+				authorized.set(i);
+			}
+		}
+		return authorized;
+	}
+
+	/**
+	 * The nodes requiring all the requirements are the ones of none not held,
+	 * the nodes requiring any of them are the ones of at least one held
+	 */
+	private static BitSet granted(boolean[] held, BitSet[] nodesByRequirement, BitSet allNodes, BitSet anyNodes) {
+		BitSet all = (BitSet) allNodes.clone();
+		BitSet any = new BitSet();
+		for (int i = 0; i < held.length; i++) {
+			if (held[i]) {
+				any.or(nodesByRequirement[i]);
+			} else {
+				all.andNot(nodesByRequirement[i]);
+			}
+		}
+		any.and(anyNodes);
+		all.or(any);
+		return all;
+	}
+
+	private static BitSet requiring(Logical logical, int size, BitSet allNodes, BitSet anyNodes) {
+		return Logical.OR.equals(logical) && size > 1 ? anyNodes : allNodes;
+	}
+}
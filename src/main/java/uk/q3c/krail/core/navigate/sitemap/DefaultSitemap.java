@@ -1,11 +1,14 @@
 package uk.q3c.krail.core.navigate.sitemap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
@@ -21,6 +24,7 @@ import uk.q3c.krail.core.navigate.parameters.Parameters;
 import uk.q3c.krail.core.navigate.sitemap.impl.AbstractNode;
 import uk.q3c.krail.core.navigate.sitemap.impl.NavigationStateImpl;
 import uk.q3c.krail.core.navigate.sitemap.impl.ParametersImpl;
+import uk.q3c.krail.core.navigate.sitemap.impl.RoutingTrie;
 import uk.q3c.krail.core.view.DefaultLoginView;
 import uk.q3c.krail.core.view.DefaultViewFactory;
 import uk.q3c.krail.core.view.KrailView;
@@ -49,6 +53,7 @@ public class DefaultSitemap implements Sitemap {
 
 		public void setAccesControlRule(AccesControl accesControlRule) {
 			this.accesControlRule = accesControlRule;
+			nodesChanged();
 		}
 
 		@Override
@@ -110,12 +115,27 @@ public class DefaultSitemap implements Sitemap {
 	private LinkedList<AbstractNode> nodes = new LinkedList<>();
 	private HashMap<StandardPageKey, SitemapNode> standardViews = new HashMap<>();
 	private HashMap<Class<? extends KrailView>, AbstractNode> nodesByClass = new HashMap<>();
+	private HashMap<String, AbstractNode> nodesByCanonicalPattern = new HashMap<>();
+	private final RoutingTrie routes = new RoutingTrie();
+	private AuthorizationDecisionCache authorizationCache;
+	/**
+	 * built at the first use, discarded when the nodes change
+	 */
+	private volatile AuthorizationIndex authorizationIndex;
 
 	@Inject
 	public DefaultSitemap(DefaultViewFactory viewFactory) {
 		this.viewFactory = viewFactory;
 	}
 
+	/**
+	 * Without the cache, the rules are checked at each call
+	 */
+	@Inject(optional = true)
+	public void setAuthorizationCache(AuthorizationDecisionCache authorizationCache) {
+		this.authorizationCache = authorizationCache;
+	}
+
 	@Override
 	public ViewNode addView(String uri, Class<? extends KrailView> view) {
 		checkUniqueClass(view);
@@ -144,6 +164,20 @@ public class DefaultSitemap implements Sitemap {
 
 		nodes.add(node);
 		nodesByClass.put(node.getViewClass(), node);
+		nodesByCanonicalPattern.put(node.getParsedUriPattern().canonical(), node);
+		routes.add(node);
+		nodesChanged();
+	}
+
+	/**
+	 * Discards the authorization index and the decisions taken for the nodes as
+	 * they were
+	 */
+	private void nodesChanged() {
+		authorizationIndex = null;
+		if (authorizationCache != null) {
+			authorizationCache.invalidateAll();
+		}
 	}
 
 	/**
@@ -159,11 +193,15 @@ public class DefaultSitemap implements Sitemap {
 		return Collections.unmodifiableMap(standardViews);
 	}
 
+	/**
+	 * Patterns are compared in their canonical form, so <code>{id}</code> and
+	 * <code>{x}</code> with the same constraint are the same pattern
+	 */
 	private void checkUniqueUriPattern(AbstractNode node) {
-		AbstractNode n = get(node.getUriPattern());
+		AbstractNode n = nodesByCanonicalPattern.get(node.getParsedUriPattern().canonical());
 		if (n != null) {
 			throw new IllegalStateException(
-					"Unable to register again this uri (" + node + ") for "
+					"Unable to register again this uri (" + node.getUriPattern() + ") for "
 							+ node + ". It is already mapped for " + n);
 		}
 	}
@@ -182,17 +220,6 @@ public class DefaultSitemap implements Sitemap {
 		return nodesByClass.get(viewClass);
 	}
 
-	private AbstractNode get(String uriPattern) {
-		for (AbstractNode node : nodes) {
-			// TODO: consider regex expressio equality intead of siple string
-			// equal
-			if (node.getUriPattern().equals(uriPattern)) {
-				return node;
-			}
-		}
-		return null;
-	}
-
 	@Override
 	public SitemapNode getStandardView(StandardPageKey key) {
 		return standardViews.get(key);
@@ -222,32 +249,11 @@ public class DefaultSitemap implements Sitemap {
 	@Override
 	public NavigationState buildNavigationStateFor(String fragment)
 			throws PageNotFoundException {
-		LinkedList<NavigationState> matches = new LinkedList<>();
-		for (AbstractNode n : nodes) {
-			NavigationState state = n.buildNavigationState(fragment);
-			if (state != null) {
-				if (LOGGER.isDebugEnabled()) {
-					// queque all possible match (should exist only one)
-					matches.add(state);
-				} else {
-					// return the first match
-					return state;
-				}
-			}
-		}
-
-		if (matches.size() > 1) {
-			assert LOGGER.isDebugEnabled();
-			StringBuilder sb = new StringBuilder(
-					"Multiple URI match the current fragment, this implementation can't tell wich one is the right one, it will use the first one:\n");
-			for (NavigationState n : matches) {
-				sb.append("\t " + n.toString() + " \n");
-			}
-			LOGGER.warn(sb.toString());
-		} else if (matches.isEmpty()) {
+		NavigationState state = routes.buildNavigationState(fragment);
+		if (state == null) {
 			throw new InvalidURIException(fragment, nodes);
 		}
-		return matches.getFirst();
+		return state;
 	}
 
 	@Override
@@ -284,6 +290,19 @@ public class DefaultSitemap implements Sitemap {
 						: new ParametersImpl(node.getViewClass()));
 	}
 
+	@Override
+	public List<SitemapNode> getChildren(SitemapNode node) {
+		String prefix = node.getUriPattern().isEmpty() ? "" : node.getUriPattern() + "/";
+		List<SitemapNode> children = new ArrayList<>();
+		for (AbstractNode n : nodes) {
+			String uri = n.getUriPattern();
+			if (n != node && !uri.isEmpty() && uri.startsWith(prefix) && uri.indexOf('/', prefix.length()) < 0) {
+				children.add(n);
+			}
+		}
+		return children;
+	}
+
 	@Override
 	public boolean contains(Class<? extends View> viewClass) {
 		return nodesByClass.containsKey(viewClass);
@@ -292,7 +311,28 @@ public class DefaultSitemap implements Sitemap {
 	@Override
 	public void checkAuthorization(Class<? extends KrailView> viewClass, Subject subject) {
 		AbstractNode node = get(viewClass);
-		node.getAccesControlRule().checkAuthorization(subject);
+		if (authorizationCache != null) {
+			authorizationCache.checkAuthorization(node, subject);
+		} else {
+			node.getAccesControlRule().checkAuthorization(subject);
+		}
+	}
+
+	@Override
+	public Set<SitemapNode> getAuthorizedNodes(Subject subject) {
+		if (authorizationCache != null) {
+			return authorizationCache.getAuthorizedNodes(subject, this::resolveAuthorizedNodes);
+		}
+		return resolveAuthorizedNodes(subject);
+	}
+
+	private Set<SitemapNode> resolveAuthorizedNodes(Subject subject) {
+		AuthorizationIndex index = authorizationIndex;
+		if (index == null) {
+			index = new AuthorizationIndex(nodes);
+			authorizationIndex = index;
+		}
+		return index.authorizedNodes(subject);
 	}
 
 }
@@ -1,5 +1,8 @@
 package uk.q3c.krail.core.navigate.sitemap;
 
+import java.util.List;
+import java.util.Set;
+
 import org.apache.shiro.subject.Subject;
 
 import com.vaadin.navigator.View;
@@ -41,7 +44,18 @@ public interface Sitemap {
 
 	boolean contains(Class<? extends View> viewClass);
 
+	/**
+	 * The nodes one level below the node in the uri hierarchy
+	 */
+	List<SitemapNode> getChildren(SitemapNode node);
+
 	void checkAuthorization(Class<? extends KrailView> viewClass, Subject subject);
 
+	/**
+	 * All the nodes the subject is authorized to, in one pass and without
+	 * exceptions: to build menus and breadcrumbs
+	 */
+	Set<SitemapNode> getAuthorizedNodes(Subject subject);
+
 
 }
@@ -23,8 +23,13 @@ import org.slf4j.LoggerFactory;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
 
+import uk.q3c.krail.core.guice.index.AnnotatedTypeIndex;
+import uk.q3c.krail.core.guice.index.ReflectionsTypeIndex;
+import uk.q3c.krail.core.navigate.parameters.ParameterConverter;
+import uk.q3c.krail.core.navigate.parameters.ParameterConverters;
 import uk.q3c.krail.core.navigate.sitemap.DefaultSitemap.RedirectNode;
 import uk.q3c.krail.core.navigate.sitemap.DefaultSitemap.ViewNode;
 import uk.q3c.krail.core.navigate.sitemap.annotations.AnnotationSitemapLoader;
@@ -134,15 +139,19 @@ public class SitemapModule extends AbstractModule {
 		}
 	}
 
-	private final Reflections basePackageReflections;
+	private final AnnotatedTypeIndex typeIndex;
 
 	public SitemapModule(String basePackage) {
-		this(new Reflections(basePackage));
+		this(AnnotatedTypeIndex.forBasePackage(basePackage));
 	}
 
 	public SitemapModule(Reflections basePackageReflections) {
+		this(new ReflectionsTypeIndex(basePackageReflections));
+	}
+
+	public SitemapModule(AnnotatedTypeIndex typeIndex) {
 		super();
-		this.basePackageReflections = basePackageReflections;
+		this.typeIndex = typeIndex;
 	}
 
 	@Override
@@ -151,6 +160,11 @@ public class SitemapModule extends AbstractModule {
 
 		bindLoaders(sitemapLoadersBinder);
 
+		Multibinder<ParameterConverter<?>> parameterConvertersBinder = Multibinder.newSetBinder(binder(),
+				new TypeLiteral<ParameterConverter<?>>() {
+				});
+		bindParameterConverters(parameterConvertersBinder);
+
 		bind(Sitemap.class).toProvider(SitemapProvider.class).asEagerSingleton();
 		// FIXME: static injection
 		requestStaticInjection(ParametersImpl.class);
@@ -159,7 +173,8 @@ public class SitemapModule extends AbstractModule {
 
 	/**
 	 * Overide this to chaange the default used SitemapLoader
-	 * (AnnotationSitemapLoader that will scann all the classpath) or add others:
+	 * (AnnotationSitemapLoader that reads the annotated views from the generated
+	 * index, or scans the base package) or add others:
 	 * <br>
 	 * <br>
 	 * <code>
@@ -168,7 +183,19 @@ public class SitemapModule extends AbstractModule {
 	 * </code>
 	 */
 	protected void bindLoaders(Multibinder<SitemapLoader> sitemapLoadersBinder) {
-		sitemapLoadersBinder.addBinding().toInstance(new AnnotationSitemapLoader(basePackageReflections));
+		sitemapLoadersBinder.addBinding().toInstance(new AnnotationSitemapLoader(typeIndex));
+	}
+
+	/**
+	 * Override this to add the converters of the uri parameters to the types
+	 * that {@link ParameterConverters} doesn't handle (or to replace its
+	 * conversion):<br>
+	 * <br>
+	 * <code>
+	 * 	parameterConvertersBinder.addBinding().to(MyTypeConverter.class);
+	 * </code>
+	 */
+	protected void bindParameterConverters(Multibinder<ParameterConverter<?>> parameterConvertersBinder) {
 	}
 
 }
@@ -12,6 +12,8 @@ import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.q3c.krail.core.guice.index.AnnotatedTypeIndex;
+import uk.q3c.krail.core.guice.index.ReflectionsTypeIndex;
 import uk.q3c.krail.core.navigate.sitemap.AccesControl;
 import uk.q3c.krail.core.navigate.sitemap.Sitemap;
 import uk.q3c.krail.core.navigate.sitemap.SitemapLoader;
@@ -25,24 +27,28 @@ public class AnnotationSitemapLoader implements SitemapLoader {
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(AnnotationSitemapLoader.class);
 
-	private Reflections basePackageReflections;
+	private final AnnotatedTypeIndex typeIndex;
 
 	public AnnotationSitemapLoader(Reflections basePackageReflections) {
-		this.basePackageReflections = basePackageReflections;
+		this(new ReflectionsTypeIndex(basePackageReflections));
+	}
+
+	public AnnotationSitemapLoader(AnnotatedTypeIndex typeIndex) {
+		this.typeIndex = typeIndex;
 	}
 
 	@Override
 	public void configure(Sitemap sitemap) {
 
-		LOGGER.info("scanning {} for View annotations", basePackageReflections.getConfiguration().getUrls());
+		LOGGER.info("scanning {} for View annotations", typeIndex);
 
 		// find the View annotations
-		Set<Class<?>> typesWithView = basePackageReflections
+		Set<Class<?>> typesWithView = typeIndex
 				.getTypesAnnotatedWith(View.class);
 		LOGGER.info("{} KrailViews with View annotation found",
 				typesWithView.size());
 
-		checkRedirectAnnotations(basePackageReflections, typesWithView);
+		checkRedirectAnnotations(typeIndex, typesWithView);
 
 		// process the View annotations
 		for (Class<?> clazz : typesWithView) {
@@ -132,10 +138,10 @@ public class AnnotationSitemapLoader implements SitemapLoader {
 		}
 	}
 
-	private void checkRedirectAnnotations(Reflections reflections,
+	private void checkRedirectAnnotations(AnnotatedTypeIndex typeIndex,
 			Set<Class<?>> typesWithView) {
 		// find the Redirect annotations
-		Set<Class<?>> typesWithRedirect = reflections
+		Set<Class<?>> typesWithRedirect = typeIndex
 				.getTypesAnnotatedWith(Redirect.class);
 		LOGGER.debug("{} KrailViews with Redirect annotation found",
 				typesWithRedirect.size());
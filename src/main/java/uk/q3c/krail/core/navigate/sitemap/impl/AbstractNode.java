@@ -1,6 +1,6 @@
 package uk.q3c.krail.core.navigate.sitemap.impl;
 
-import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -12,75 +12,23 @@ import uk.q3c.krail.core.view.KrailView;
 
 public abstract class AbstractNode implements SitemapNode {
 
-	private static final Pattern OUTER_OPTIONAL_GROUP_PATTERN = Pattern.compile("\\[(.*)\\]");
-	private static final Pattern INNER_OPTIONAL_GROUP_PATTERN = Pattern.compile("\\[([^\\[\\]]*)\\]");
-	private static final Pattern PARAMETER_PATTERN = Pattern.compile("\\{(\\w*)(?::(.*))?\\}");
-	private static final String DEFAULT_PARAM_CONSTRAINT = "\\w*";
-
 	private String rawUriPattern;
-	private Pattern pattern;
-	private LinkedList<String> parametersId;
+	private final UriPattern uriPattern;
+	private final Pattern pattern;
+	private final String[] parametersId;
+	private final int[] parametersGroup;
 
 	public AbstractNode(String uri) {
 		this.rawUriPattern = uri;
-		this.parametersId = new LinkedList<>();
-
-		pattern = Pattern.compile(pharse(rawUriPattern).toString());
-	}
+		this.uriPattern = UriPattern.parse(uri);
+		this.pattern = Pattern.compile(uriPattern.toRegex());
 
-	private StringBuffer pharse(CharSequence string) {
-		int lastAppendPosition = 0;
-		Matcher m = OUTER_OPTIONAL_GROUP_PATTERN.matcher(string);
-		StringBuffer sb = new StringBuffer();
-		while (m.find()) {
-			StringBuffer before = pharse(string.subSequence(lastAppendPosition, m.start()));
-			sb.append(before);
-			sb.append("(?:" + pharse(m.group(1)) + ")?");
-			lastAppendPosition = m.end();
+		List<UriPattern.Parameter> parameters = uriPattern.getParameters();
+		this.parametersId = new String[parameters.size()];
+		for (int i = 0; i < parametersId.length; i++) {
+			parametersId[i] = parameters.get(i).getName();
 		}
-		sb.append(string.subSequence(lastAppendPosition, string.length()));
-
-		if (lastAppendPosition != 0) {
-			// found at least 1 optional group, may there be some nested
-			sb = pharse(sb);
-		}
-
-		// now there are no more optionals groups, search for parameters
-		lastAppendPosition = 0;
-		m = PARAMETER_PATTERN.matcher(sb.toString());
-		string = sb;
-		sb = new StringBuffer();
-		while (m.find()) {
-			StringBuffer before = escape(string.subSequence(lastAppendPosition, m.start()));
-			sb.append(before);
-			parametersId.add(m.group(1));
-			String paramConstraint = m.group(2);
-			if (paramConstraint == null || paramConstraint.isEmpty()) {
-				paramConstraint = DEFAULT_PARAM_CONSTRAINT;
-			}
-			sb.append("(" + paramConstraint + ")");
-			lastAppendPosition = m.end();
-		}
-		if (lastAppendPosition == 0) {
-			// dont escape if no match
-			sb.append(string.subSequence(lastAppendPosition, string.length()));
-		} else {
-			sb.append(escape(string.subSequence(lastAppendPosition, string.length())));
-		}
-
-		return sb;
-	}
-
-	private static StringBuffer escape(CharSequence charSequence) {
-		if (charSequence.length() == 0) {
-			return new StringBuffer();
-		}
-
-		StringBuffer sb = new StringBuffer(4 + charSequence.length());
-		sb.append("\\Q");
-		sb.append(charSequence);
-		sb.append("\\E");
-		return sb;
+		this.parametersGroup = uriPattern.getParameterGroups();
 	}
 
 	@Override
@@ -88,16 +36,21 @@ public abstract class AbstractNode implements SitemapNode {
 		return rawUriPattern;
 	}
 
+	/**
+	 * The parsed form of {@link #getUriPattern()}
+	 */
+	public UriPattern getParsedUriPattern() {
+		return uriPattern;
+	}
+
 	@Override
 	public NavigationState buildNavigationState(String fragment) {
 		assert fragment != null;
 		Matcher m = pattern.matcher(fragment);
 		if (m.matches()) {
 			Parameters params = new ParametersImpl(getViewClass());
-			for (int i = 0; i < parametersId.size(); i++) {
-				String id = parametersId.get(i);
-				Object value = m.group(i + 1);// groups are 1 based
-				params.put(id, value);
+			for (int i = 0; i < parametersId.length; i++) {
+				params.put(parametersId[i], m.group(parametersGroup[i]));
 			}
 			return buildNavigationState(params);
 		} else {
@@ -109,60 +62,54 @@ public abstract class AbstractNode implements SitemapNode {
 	public abstract NavigationState buildNavigationState(Parameters params);
 
 	public String buildFragment(NavigationState navigationState) {
-		return buildFragment(navigationState, rawUriPattern, false).toString();
+		StringBuilder sb = new StringBuilder(rawUriPattern.length() + 16);
+		render(sb, uriPattern.getParts(), navigationState);
+		return sb.toString();
 	}
 
 	/**
+	 * Append the parts to the fragment. An optional group is rendered only if it
+	 * contains at least one parameter with a value, otherwise it is rolled back.
 	 * 
-	 * @param viewInstance
-	 * @param pattern
-	 * @param parameters
-	 * @param optional     if true and no parameters are replaced in the pattern
-	 *                     (becouse they are null) a empty sring will be returned
-	 * @return
+	 * @return true if at least one parameter has been rendered
+	 * @throws NoSuchElementException if a (not optional) parameter has no value
 	 */
-	private CharSequence buildFragment(NavigationState navigationState, CharSequence pattern, boolean optional) {
-		boolean foundNotNullParameter = false;
-
-		int lastAppendPosition = 0;
-		Matcher m = INNER_OPTIONAL_GROUP_PATTERN.matcher(pattern);
-		StringBuffer sb = new StringBuffer();
-		while (m.find()) {
-			CharSequence before = pattern.subSequence(lastAppendPosition, m.start());
-			sb.append(before);
-			try {
-				CharSequence optionalFragment = buildFragment(navigationState, m.group(1), true);
-				if (optionalFragment.length() > 0) {
-					foundNotNullParameter = true;
+	private static boolean render(StringBuilder sb, List<UriPattern.Part> parts, NavigationState navigationState)
+			throws NoSuchElementException {
+		boolean renderedParameter = false;
+		for (UriPattern.Part part : parts) {
+			if (part instanceof UriPattern.Literal) {
+				sb.append(((UriPattern.Literal) part).getText());
+			} else if (part instanceof UriPattern.Parameter) {
+				sb.append(getParameterAsString(navigationState, ((UriPattern.Parameter) part).getName()));
+				renderedParameter = true;
+			} else {
+				int mark = sb.length();
+				boolean renderedGroup;
+				try {
+					renderedGroup = render(sb, ((UriPattern.OptionalGroup) part).getParts(), navigationState);
+				} catch (NoSuchElementException e) {
+					// canot be build, but it is optional, so will be ignoed
+					renderedGroup = false;
+				}
+				if (renderedGroup) {
+					renderedParameter = true;
+				} else {
+					sb.setLength(mark);
 				}
-				sb.append(optionalFragment);
-			} catch (NoSuchElementException e) {
-				// canot be build, but it is optional, so will be ignoed
-			}
-			lastAppendPosition = m.end();
-		}
-		sb.append(pattern.subSequence(lastAppendPosition, pattern.length()));
-
-		lastAppendPosition = 0;
-		m = PARAMETER_PATTERN.matcher(sb.toString());
-		pattern = sb;
-		sb = new StringBuffer();
-		while (m.find()) {
-			CharSequence before = pattern.subSequence(lastAppendPosition, m.start());
-			sb.append(before);
-			String value = navigationState.parameters().getAsString(m.group(1), navigationState.getViewInstance());
-			if (value != null) {
-				foundNotNullParameter = true;
 			}
-			sb.append(value);
-			lastAppendPosition = m.end();
 		}
-		sb.append(pattern.subSequence(lastAppendPosition, pattern.length()));
+		return renderedParameter;
+	}
 
-		if (optional == true && foundNotNullParameter == false) {
-			return "";
+	private static String getParameterAsString(NavigationState navigationState, String id)
+			throws NoSuchElementException {
+		Parameters parameters = navigationState.parameters();
+		if (parameters.contains(id)) {
+			// no need of the view (and to build it) for an explicit value
+			return parameters.getAsString(id, null);
 		} else {
-			return sb;
+			return parameters.getAsString(id, navigationState.getViewInstance());
 		}
 	}
 
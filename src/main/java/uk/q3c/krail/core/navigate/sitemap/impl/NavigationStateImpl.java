@@ -17,6 +17,13 @@ public class NavigationStateImpl implements NavigationState {
 	private KrailView viewInstance;
 	private Parameters parameters;
 
+	/**
+	 * the last fragment built, valid as long as the parameters are not modified
+	 */
+	private transient String fragment;
+	private transient int fragmentModificationCount;
+	private transient boolean viewRequested;
+
 	public NavigationStateImpl(DefaultViewFactory viewFactory, SitemapNode node,
 			Parameters parameters) {
 		this.viewFactory = viewFactory;
@@ -26,7 +33,24 @@ public class NavigationStateImpl implements NavigationState {
 
 	@Override
 	public String getFragment() {
-		return node.buildFragment(this);
+		if (fragment != null && fragmentModificationCount == getModificationCount()) {
+			return fragment;
+		}
+		viewRequested = false;
+		String builtFragment = node.buildFragment(this);
+		if (!viewRequested && parameters instanceof ParametersImpl) {
+			// only explicit parameters have been used, calculated ones may change
+			// without notice
+			fragment = builtFragment;
+			fragmentModificationCount = getModificationCount();
+		} else {
+			fragment = null;
+		}
+		return builtFragment;
+	}
+
+	private int getModificationCount() {
+		return parameters instanceof ParametersImpl ? ((ParametersImpl) parameters).getModificationCount() : -1;
 	}
 
 	@Override
@@ -46,11 +70,12 @@ public class NavigationStateImpl implements NavigationState {
 	}
 
 	protected KrailView buildViewInstance() {
-		return viewFactory.get(getSitemapNode().getViewClass());
+		return viewFactory.get(this);
 	}
 
 	@Override
 	public KrailView getViewInstance() {
+		viewRequested = true;
 		if (viewInstance == null) {
 			viewInstance = buildViewInstance();
 		}
@@ -1,29 +1,25 @@
 package uk.q3c.krail.core.navigate.sitemap.impl;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
 import com.google.inject.Inject;
-import com.google.inject.Injector;
-import com.google.inject.Provider;
 
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
-import uk.q3c.krail.core.navigate.parameters.ProvidesParameter;
-import uk.q3c.krail.core.navigate.DefaultNavigationCallbackHandler;
+import uk.q3c.krail.core.navigate.CallbackArgumentBinder;
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata;
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata.CallbackAlternatives;
+import uk.q3c.krail.core.navigate.NavigationCallbackMetadata.CallbackMethod;
 import uk.q3c.krail.core.navigate.parameters.Parameters;
 import uk.q3c.krail.core.view.KrailView;
 
@@ -31,10 +27,13 @@ public class ParametersImpl implements Parameters {
 
 	// static injection
 	@Inject
-	private static Provider<Injector> injectorProvider;
-
-	private static Map<Class<? extends KrailView>, Multimap<String, Method>> parametersProvidersCache = new HashMap<>();
+	private static CallbackArgumentBinder argumentBinder;
 
+	/**
+	 * @deprecated the annotated methods of the views are cached by
+	 *             {@link NavigationCallbackMetadata}
+	 */
+	@Deprecated
 	public static List<Method> getMethodsAnnotatedWith(final Class<?> type,
 			final Class<? extends Annotation> annotation) {
 		final List<Method> methods = new ArrayList<Method>();
@@ -58,26 +57,17 @@ public class ParametersImpl implements Parameters {
 		return methods;
 	}
 
-	private static Multimap<String, Method> getParametersProviders(Class<? extends KrailView> viewClass) {
-
-		Multimap<String, Method> providers = parametersProvidersCache.get(viewClass);
-		if (providers == null) {
-			providers = MultimapBuilder.hashKeys().arrayListValues().build();
-
-			List<Method> providesParameterMethods = getMethodsAnnotatedWith(viewClass, ProvidesParameter.class);
-
-			for (Method method : providesParameterMethods) {
-				ProvidesParameter annotation = method.getAnnotation(ProvidesParameter.class);
-				String name = annotation.name();
-				providers.put(name, method);
-			}
-			parametersProvidersCache.put(viewClass, providers);
-		}
-		return providers;
+	/**
+	 * The values, shared with the copies. Counts the modifications so that what is
+	 * built from the parameters (the fragment) can be cached.
+	 */
+	private static class ParametersMap extends LinkedHashMap<String, Object> {
+		private static final long serialVersionUID = 1L;
+		private int modifications;
 	}
 
 	private final Class<? extends KrailView> targetViewClass;
-	private Map<String, Object> parameters = new LinkedHashMap<>();
+	private ParametersMap parameters = new ParametersMap();
 
 	public ParametersImpl(Class<? extends KrailView> targetViewClass) {
 		this.targetViewClass = targetViewClass;
@@ -92,8 +82,23 @@ public class ParametersImpl implements Parameters {
 		return targetViewClass;
 	}
 
+	/**
+	 * The explicit values, not the calculated ones (read only view)
+	 */
+	public Map<String, Object> getValues() {
+		return Collections.unmodifiableMap(parameters);
+	}
+
+	/**
+	 * Incremented every time a value is put, by this instance or by a copy
+	 */
+	public int getModificationCount() {
+		return parameters.modifications;
+	}
+
 	@Override
 	public Object put(String id, Object value) {
+		parameters.modifications++;
 		if (value != null) {
 			return parameters.put(id, value);
 		} else {
@@ -124,21 +129,21 @@ public class ParametersImpl implements Parameters {
 
 	protected Object calculateParameter(String parameterKey, KrailView view) throws NoSuchElementException {
 
-		Multimap<String, Method> map = getParametersProviders(targetViewClass);
-
-		Collection<Method> providers = map.get(parameterKey);
-		Map<Method, Object[]> parameterProviderMethods = DefaultNavigationCallbackHandler
-				.getMatchingMethodForAvailibleParameters(injectorProvider.get(), view, null,
-						LooplessCalculatedParametersWrapper.build(this, parameterKey), providers, true);
+		CallbackAlternatives providers = NavigationCallbackMetadata.of(targetViewClass)
+				.getParameterProviders(parameterKey);
+		if (providers.isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		Map<CallbackMethod, Object[]> parameterProviderMethods = argumentBinder.match(providers, view, null,
+				LooplessCalculatedParametersWrapper.build(this, parameterKey));
 		if (!parameterProviderMethods.isEmpty()) {
 			Throwable error = null;
-			for (Entry<Method, Object[]> entry : parameterProviderMethods.entrySet()) {
-				Method method = entry.getKey();
-				Object[] args = entry.getValue();
+			for (Entry<CallbackMethod, Object[]> entry : parameterProviderMethods.entrySet()) {
 				try {
-					method.setAccessible(true);
-					return method.invoke(view, args);
-				} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+					return entry.getKey().invoke(view, entry.getValue());
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable e) {
 					error = e;
 				}
 			}
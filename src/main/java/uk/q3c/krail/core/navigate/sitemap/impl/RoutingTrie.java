@@ -0,0 +1,366 @@
+package uk.q3c.krail.core.navigate.sitemap.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+
+/**
+ * Index of the sitemap nodes by path segment, used to resolve a fragment
+ * without trying the regex of every node.<br>
+ * Every uri pattern is expanded in its variants (one for every combination of
+ * its optional groups) and each variant is split on '/'. A segment without
+ * parameters becomes a static edge (looked up by hash), a segment with
+ * parameters becomes a dynamic edge matched by its own small regex. When a
+ * parameter constraint could match a '/' the rest of the pattern can't be
+ * split, so the node is registered as a "greedy" candidate of the trie node
+ * reached so far.<br>
+ * At lookup static edges are preferred over dynamic edges, and dynamic edges
+ * over greedy candidates; the node regex is then used only to verify the
+ * constraints and extract the parameters of the selected candidates.<br>
+ * Two patterns that can match the same fragments are reported once, when the
+ * second one is added: the trie is walked along every edge that can match the
+ * same segment as the pattern added (two dynamic edges overlap if one of them
+ * matches a sample value of the other, see {@link #SAMPLES}). At lookup the
+ * static segments win, then the first pattern registered.
+ * <p>
+ * Not thread safe while nodes are being added, safe for concurrent lookups
+ * once the sitemap has been built.
+ */
+public class RoutingTrie {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RoutingTrie.class);
+
+	/**
+	 * The values given to the parameters of a segment to find the segments it
+	 * overlaps, the ones not matching its constraints are dropped
+	 */
+	private static final String[] SAMPLES = { "", "0", "1", "123", "a", "A", "abc", "a1", "1a", "_", "-", "a-b", "a.b",
+			"~", "%20" };
+
+	private static final class Route {
+		private final AbstractNode node;
+		/**
+		 * true if the variant that lead to this route has no parameters: the path
+		 * itself is enough to know that the node matches
+		 */
+		private final boolean exact;
+
+		private Route(AbstractNode node, boolean exact) {
+			this.node = node;
+			this.exact = exact;
+		}
+	}
+
+	/**
+	 * A segment of a pattern variant: a static text, or a regex with the sample
+	 * values it matches
+	 */
+	private static final class Segment {
+		private final String text;
+		private final String regex;
+		private final Pattern pattern;
+		private final List<String> samples;
+
+		private Segment(String text) {
+			this.text = text;
+			this.regex = null;
+			this.pattern = null;
+			this.samples = null;
+		}
+
+		/**
+		 * @param pieces the literals of the segment, null for a parameter
+		 */
+		private Segment(String regex, List<String> pieces) {
+			this.text = null;
+			this.regex = regex;
+			this.pattern = Pattern.compile(regex);
+			this.samples = new ArrayList<>();
+			for (String sample : SAMPLES) {
+				StringBuilder sb = new StringBuilder();
+				for (String piece : pieces) {
+					sb.append(piece != null ? piece : sample);
+				}
+				String value = sb.toString();
+				if (pattern.matcher(value).matches() && !samples.contains(value)) {
+					samples.add(value);
+				}
+			}
+		}
+
+		private boolean isDynamic() {
+			return regex != null;
+		}
+
+		private boolean matches(String value) {
+			return isDynamic() ? pattern.matcher(value).matches() : text.equals(value);
+		}
+
+		/**
+		 * True if the two segments can match the same value, for the dynamic
+		 * segments as far as their samples tell
+		 */
+		private boolean overlaps(Segment other) {
+			if (!isDynamic()) {
+				return other.matches(text);
+			} else if (!other.isDynamic()) {
+				return matches(other.text);
+			} else if (regex.equals(other.regex)) {
+				return true;
+			}
+			for (String sample : samples) {
+				if (other.matches(sample)) {
+					return true;
+				}
+			}
+			for (String sample : other.samples) {
+				if (matches(sample)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class DynamicEdge {
+		private final Segment segment;
+		private final TrieNode child = new TrieNode();
+
+		private DynamicEdge(Segment segment) {
+			this.segment = segment;
+		}
+	}
+
+	private static final class TrieNode {
+		private Map<String, TrieNode> staticChildren;
+		private List<DynamicEdge> dynamicChildren;
+		private List<Route> terminals;
+		private List<AbstractNode> greedy;
+
+		private TrieNode staticChild(String segment) {
+			if (staticChildren == null) {
+				staticChildren = new HashMap<>();
+			}
+			return staticChildren.computeIfAbsent(segment, s -> new TrieNode());
+		}
+
+		private TrieNode dynamicChild(Segment segment) {
+			if (dynamicChildren == null) {
+				dynamicChildren = new ArrayList<>();
+			}
+			for (DynamicEdge edge : dynamicChildren) {
+				if (edge.segment.regex.equals(segment.regex)) {
+					return edge.child;
+				}
+			}
+			DynamicEdge edge = new DynamicEdge(segment);
+			dynamicChildren.add(edge);
+			return edge.child;
+		}
+
+		private TrieNode child(Segment segment) {
+			return segment.isDynamic() ? dynamicChild(segment) : staticChild(segment.text);
+		}
+	}
+
+	private final TrieNode root = new TrieNode();
+	private final Set<String> reportedAmbiguities = new HashSet<>();
+
+	public void add(AbstractNode node) {
+		for (List<UriPattern.Part> variant : node.getParsedUriPattern().variants()) {
+			add(node, variant);
+		}
+	}
+
+	private void add(AbstractNode node, List<UriPattern.Part> variant) {
+		TrieNode current = root;
+		boolean exact = true;
+		List<Segment> segments = new ArrayList<>();
+		StringBuilder segmentText = new StringBuilder();
+		StringBuilder segmentRegex = new StringBuilder();
+		List<String> pieces = new ArrayList<>();
+		boolean dynamic = false;
+		for (UriPattern.Part part : variant) {
+			if (part instanceof UriPattern.Parameter) {
+				UriPattern.Parameter parameter = (UriPattern.Parameter) part;
+				if (!parameter.isSegmentSafe()) {
+					// can't tell where the segment ends, the regex will decide
+					addGreedy(current, node);
+					return;
+				}
+				exact = false;
+				dynamic = true;
+				segmentRegex.append("(?:").append(parameter.getConstraint()).append(')');
+				pieces.add(null);
+				continue;
+			}
+			String text = ((UriPattern.Literal) part).getText();
+			int start = 0;
+			int slash;
+			while ((slash = text.indexOf('/', start)) >= 0) {
+				appendLiteral(segmentText, segmentRegex, pieces, text.substring(start, slash));
+				Segment segment = dynamic ? new Segment(segmentRegex.toString(), pieces)
+						: new Segment(segmentText.toString());
+				segments.add(segment);
+				current = current.child(segment);
+				segmentText.setLength(0);
+				segmentRegex.setLength(0);
+				pieces.clear();
+				dynamic = false;
+				start = slash + 1;
+			}
+			appendLiteral(segmentText, segmentRegex, pieces, text.substring(start));
+		}
+		Segment segment = dynamic ? new Segment(segmentRegex.toString(), pieces) : new Segment(segmentText.toString());
+		segments.add(segment);
+		current = current.child(segment);
+		if (addTerminal(current, node, exact)) {
+			reportOverlaps(root, segments, 0, node);
+		}
+	}
+
+	private static void appendLiteral(StringBuilder segmentText, StringBuilder segmentRegex, List<String> pieces,
+			String literal) {
+		if (!literal.isEmpty()) {
+			segmentText.append(literal);
+			segmentRegex.append(Pattern.quote(literal));
+			pieces.add(literal);
+		}
+	}
+
+	/**
+	 * @return false if the node was already a terminal of the trie node
+	 */
+	private boolean addTerminal(TrieNode trieNode, AbstractNode node, boolean exact) {
+		if (trieNode.terminals == null) {
+			trieNode.terminals = new ArrayList<>(1);
+		}
+		for (Route route : trieNode.terminals) {
+			if (route.node == node) {
+				return false;
+			}
+		}
+		trieNode.terminals.add(new Route(node, exact));
+		return true;
+	}
+
+	/**
+	 * Reports the terminals of other nodes reached from the trie node along the
+	 * edges that overlap the segments of the variant added, from the index
+	 */
+	private void reportOverlaps(TrieNode trieNode, List<Segment> segments, int index, AbstractNode node) {
+		if (index == segments.size()) {
+			if (trieNode.terminals != null) {
+				for (Route route : trieNode.terminals) {
+					if (route.node != node) {
+						reportAmbiguity(route.node, node);
+					}
+				}
+			}
+			return;
+		}
+		Segment segment = segments.get(index);
+		if (trieNode.staticChildren != null) {
+			if (segment.isDynamic()) {
+				for (Map.Entry<String, TrieNode> child : trieNode.staticChildren.entrySet()) {
+					if (segment.matches(child.getKey())) {
+						reportOverlaps(child.getValue(), segments, index + 1, node);
+					}
+				}
+			} else {
+				TrieNode child = trieNode.staticChildren.get(segment.text);
+				if (child != null) {
+					reportOverlaps(child, segments, index + 1, node);
+				}
+			}
+		}
+		if (trieNode.dynamicChildren != null) {
+			for (DynamicEdge edge : trieNode.dynamicChildren) {
+				if (segment.overlaps(edge.segment)) {
+					reportOverlaps(edge.child, segments, index + 1, node);
+				}
+			}
+		}
+	}
+
+	private void addGreedy(TrieNode trieNode, AbstractNode node) {
+		if (trieNode.greedy == null) {
+			trieNode.greedy = new ArrayList<>(1);
+		}
+		if (!trieNode.greedy.contains(node)) {
+			trieNode.greedy.add(node);
+		}
+	}
+
+	private void reportAmbiguity(AbstractNode registered, AbstractNode added) {
+		if (reportedAmbiguities.add(registered.getUriPattern() + "\n" + added.getUriPattern())) {
+			LOGGER.warn(
+					"The uri patterns '{}' and '{}' can match the same fragments, the static segments win, then the first one registered:\n\t {}\n\t {}",
+					registered.getUriPattern(), added.getUriPattern(), registered, added);
+		}
+	}
+
+	/**
+	 * @return the navigation state of the node matching the fragment, or null if
+	 *         there is no match
+	 */
+	public NavigationState buildNavigationState(String fragment) {
+		assert fragment != null;
+		return match(root, fragment, 0);
+	}
+
+	/**
+	 * @param start the index of the first char of the next segment, when greater
+	 *              than the fragment length all the segments have been consumed
+	 */
+	private NavigationState match(TrieNode trieNode, String fragment, int start) {
+		NavigationState state;
+		if (start > fragment.length()) {
+			if (trieNode.terminals != null) {
+				for (Route route : trieNode.terminals) {
+					state = route.exact ? route.node.buildNavigationState(new ParametersImpl(route.node.getViewClass()))
+							: route.node.buildNavigationState(fragment);
+					if (state != null) {
+						return state;
+					}
+				}
+			}
+		} else {
+			int end = fragment.indexOf('/', start);
+			if (end < 0) {
+				end = fragment.length();
+			}
+			if (trieNode.staticChildren != null) {
+				TrieNode child = trieNode.staticChildren.get(fragment.substring(start, end));
+				if (child != null && (state = match(child, fragment, end + 1)) != null) {
+					return state;
+				}
+			}
+			if (trieNode.dynamicChildren != null) {
+				for (DynamicEdge edge : trieNode.dynamicChildren) {
+					if (edge.segment.pattern.matcher(fragment).region(start, end).matches()
+							&& (state = match(edge.child, fragment, end + 1)) != null) {
+						return state;
+					}
+				}
+			}
+		}
+		if (trieNode.greedy != null) {
+			for (AbstractNode node : trieNode.greedy) {
+				if ((state = node.buildNavigationState(fragment)) != null) {
+					return state;
+				}
+			}
+		}
+		return null;
+	}
+}
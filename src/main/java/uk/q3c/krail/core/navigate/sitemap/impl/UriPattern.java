@@ -0,0 +1,477 @@
+package uk.q3c.krail.core.navigate.sitemap.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, parsed form of a sitemap uri pattern, for example
+ * <code>users/{id:\d+}[/edit]</code>. A pattern is a sequence of literal text,
+ * <code>{name}</code> or <code>{name:constraint}</code> parameters and
+ * <code>[...]</code> optional groups (that can be nested).<br>
+ * The pattern is parsed once, when the node is created, and is then used to
+ * build the matching regex and the routing trie of the sitemap.
+ */
+public final class UriPattern {
+
+	public interface Part {
+	}
+
+	public static final class Literal implements Part {
+		private final String text;
+
+		private Literal(String text) {
+			this.text = text;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+
+	public static final class Parameter implements Part {
+		private final String name;
+		private final String constraint;
+		private final int groupCount;
+
+		private Parameter(String name, String constraint) {
+			this.name = name;
+			this.constraint = constraint;
+			this.groupCount = Pattern.compile(constraint).matcher("").groupCount();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * the regex the parameter value must match ({@link #DEFAULT_CONSTRAINT} if
+		 * not specified)
+		 */
+		public String getConstraint() {
+			return constraint;
+		}
+
+		/**
+		 * The number of capturing groups declared inside the constraint
+		 */
+		int getGroupCount() {
+			return groupCount;
+		}
+
+		/**
+		 * True if the constraint can't match a '/', so the parameter value is always
+		 * contained in a single path segment. The check is conservative: it may
+		 * return false for constraints that actually can't match a '/'.
+		 */
+		public boolean isSegmentSafe() {
+			return UriPattern.isSegmentSafe(constraint);
+		}
+
+		@Override
+		public String toString() {
+			return "{" + name + (DEFAULT_CONSTRAINT.equals(constraint) ? "" : ":" + constraint) + "}";
+		}
+	}
+
+	public static final class OptionalGroup implements Part {
+		private final List<Part> parts;
+
+		private OptionalGroup(List<Part> parts) {
+			this.parts = Collections.unmodifiableList(parts);
+		}
+
+		public List<Part> getParts() {
+			return parts;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("[");
+			for (Part part : parts) {
+				sb.append(part);
+			}
+			return sb.append(']').toString();
+		}
+	}
+
+	public static final String DEFAULT_CONSTRAINT = "\\w*";
+
+	/**
+	 * equivalent spellings replaced in the constraints to build the canonical form
+	 */
+	private static final String[][] CONSTRAINT_EQUIVALENCES = new String[][] {
+			{ "[0-9]", "\\d" },
+			{ "[a-zA-Z0-9_]", "\\w" },
+			{ "[A-Za-z0-9_]", "\\w" },
+			{ "[a-zA-Z_0-9]", "\\w" },
+			{ "[A-Za-z_0-9]", "\\w" },
+			{ "[_a-zA-Z0-9]", "\\w" },
+			{ "{0,}", "*" },
+			{ "{1,}", "+" },
+			{ "{0,1}", "?" } };
+
+	/**
+	 * The letters of the escapes that can't match a '/': classes, boundaries and
+	 * control characters
+	 */
+	private static final String SAFE_ESCAPES = "dswhvbBAGzZtnrfae";
+
+	public static UriPattern parse(String rawPattern) {
+		return new UriPattern(rawPattern);
+	}
+
+	private final String rawPattern;
+	private final List<Part> parts;
+	private final List<Parameter> parameters = new ArrayList<>();
+
+	private UriPattern(String rawPattern) {
+		if (rawPattern == null) {
+			throw new IllegalArgumentException("the uri pattern should not be null");
+		}
+		this.rawPattern = rawPattern;
+		int[] position = new int[] { 0 };
+		this.parts = Collections.unmodifiableList(parseParts(position, false));
+	}
+
+	private List<Part> parseParts(int[] position, boolean insideGroup) {
+		List<Part> result = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		while (position[0] < rawPattern.length()) {
+			char c = rawPattern.charAt(position[0]);
+			if (c == '[') {
+				flushLiteral(literal, result);
+				position[0]++;
+				result.add(new OptionalGroup(parseParts(position, true)));
+			} else if (c == ']') {
+				if (!insideGroup) {
+					throw invalid("unbalanced ']' at position " + position[0]);
+				}
+				position[0]++;
+				flushLiteral(literal, result);
+				return result;
+			} else if (c == '{') {
+				flushLiteral(literal, result);
+				Parameter parameter = parseParameter(position);
+				parameters.add(parameter);
+				result.add(parameter);
+			} else {
+				literal.append(c);
+				position[0]++;
+			}
+		}
+		if (insideGroup) {
+			throw invalid("unclosed optional group");
+		}
+		flushLiteral(literal, result);
+		return result;
+	}
+
+	private Parameter parseParameter(int[] position) {
+		int start = position[0];
+		int i = start + 1;
+		while (i < rawPattern.length() && isWordChar(rawPattern.charAt(i))) {
+			i++;
+		}
+		String name = rawPattern.substring(start + 1, i);
+		if (i >= rawPattern.length()) {
+			throw invalid("unclosed parameter at position " + start);
+		}
+		String constraint;
+		if (rawPattern.charAt(i) == '}') {
+			constraint = DEFAULT_CONSTRAINT;
+		} else if (rawPattern.charAt(i) == ':') {
+			// the constraint is a regex, that may contain balanced braces
+			int constraintStart = ++i;
+			int depth = 0;
+			while (i < rawPattern.length()) {
+				char c = rawPattern.charAt(i);
+				if (c == '\\') {
+					i++;
+				} else if (c == '{') {
+					depth++;
+				} else if (c == '}') {
+					if (depth == 0) {
+						break;
+					}
+					depth--;
+				}
+				i++;
+			}
+			if (i >= rawPattern.length()) {
+				throw invalid("unclosed parameter at position " + start);
+			}
+			constraint = rawPattern.substring(constraintStart, i);
+			if (constraint.isEmpty()) {
+				constraint = DEFAULT_CONSTRAINT;
+			}
+		} else {
+			throw invalid("invalid character '" + rawPattern.charAt(i) + "' in the parameter name at position " + i);
+		}
+		position[0] = i + 1;
+		return new Parameter(name, constraint);
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	private static void flushLiteral(StringBuilder literal, List<Part> result) {
+		if (literal.length() > 0) {
+			result.add(new Literal(literal.toString()));
+			literal.setLength(0);
+		}
+	}
+
+	private IllegalArgumentException invalid(String reason) {
+		return new IllegalArgumentException("Invalid uri pattern '" + rawPattern + "': " + reason);
+	}
+
+	public String getRawPattern() {
+		return rawPattern;
+	}
+
+	public List<Part> getParts() {
+		return parts;
+	}
+
+	/**
+	 * All the parameters of the pattern (optional or not), in order of appearance
+	 */
+	public List<Parameter> getParameters() {
+		return Collections.unmodifiableList(parameters);
+	}
+
+	/**
+	 * Build the regex matching the whole pattern. Every parameter value is
+	 * captured by a group, use {@link #getParameterGroups()} to know its index.
+	 */
+	public String toRegex() {
+		StringBuilder sb = new StringBuilder();
+		appendRegex(sb, parts);
+		return sb.toString();
+	}
+
+	private static void appendRegex(StringBuilder sb, List<Part> parts) {
+		for (Part part : parts) {
+			if (part instanceof Literal) {
+				sb.append(Pattern.quote(((Literal) part).getText()));
+			} else if (part instanceof Parameter) {
+				sb.append('(').append(((Parameter) part).getConstraint()).append(')');
+			} else {
+				sb.append("(?:");
+				appendRegex(sb, ((OptionalGroup) part).getParts());
+				sb.append(")?");
+			}
+		}
+	}
+
+	/**
+	 * The index of the regex group (see {@link #toRegex()}) capturing each
+	 * parameter, in the same order of {@link #getParameters()}. Groups declared
+	 * inside the constraints are taken into account.
+	 */
+	public int[] getParameterGroups() {
+		int[] groups = new int[parameters.size()];
+		int group = 1;
+		for (int i = 0; i < groups.length; i++) {
+			groups[i] = group;
+			group += 1 + parameters.get(i).getGroupCount();
+		}
+		return groups;
+	}
+
+	/**
+	 * Expands the optional groups, returning every combination of literal and
+	 * parameters parts that the pattern can match.
+	 */
+	public List<List<Part>> variants() {
+		return variants(parts);
+	}
+
+	private static List<List<Part>> variants(List<Part> parts) {
+		List<List<Part>> result = new ArrayList<>();
+		result.add(new ArrayList<>());
+		for (Part part : parts) {
+			if (part instanceof OptionalGroup) {
+				List<List<Part>> groupVariants = variants(((OptionalGroup) part).getParts());
+				List<List<Part>> expanded = new ArrayList<>();
+				for (List<Part> prefix : result) {
+					expanded.add(prefix);
+					for (List<Part> groupVariant : groupVariants) {
+						List<Part> variant = new ArrayList<>(prefix);
+						variant.addAll(groupVariant);
+						expanded.add(variant);
+					}
+				}
+				result = expanded;
+			} else {
+				for (List<Part> variant : result) {
+					variant.add(part);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A form of the pattern where the parameter names are dropped and the common
+	 * equivalent spellings of the constraints are normalised, so that
+	 * <code>users/{id:[0-9]+}</code> and <code>users/{x:\d+}</code> have the same
+	 * canonical form. Two patterns with the same canonical form match the same
+	 * fragments (the converse is not guaranteed).
+	 */
+	public String canonical() {
+		StringBuilder sb = new StringBuilder(rawPattern.length());
+		appendCanonical(sb, parts);
+		return sb.toString();
+	}
+
+	private static void appendCanonical(StringBuilder sb, List<Part> parts) {
+		for (Part part : parts) {
+			if (part instanceof Literal) {
+				sb.append(((Literal) part).getText());
+			} else if (part instanceof Parameter) {
+				sb.append('{').append(canonicalConstraint(((Parameter) part).getConstraint())).append('}');
+			} else {
+				sb.append('[');
+				appendCanonical(sb, ((OptionalGroup) part).getParts());
+				sb.append(']');
+			}
+		}
+	}
+
+	/**
+	 * Replaces the equivalent spellings token by token: the escaped characters
+	 * and the insides of the character classes are copied as they are, so that
+	 * <code>\[0-9]</code> (a literal "[0-9]") is not taken for a digit class
+	 */
+	static String canonicalConstraint(String constraint) {
+		if (constraint.contains("\\Q")) {
+			// quoted text, the tokens can't be told apart
+			return constraint;
+		}
+		StringBuilder sb = new StringBuilder(constraint.length());
+		int i = 0;
+		while (i < constraint.length()) {
+			String[] equivalence = equivalenceAt(constraint, i);
+			if (equivalence != null) {
+				sb.append(equivalence[1]);
+				i += equivalence[0].length();
+			} else {
+				int end = tokenEnd(constraint, i);
+				sb.append(constraint, i, end);
+				i = end;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String[] equivalenceAt(String constraint, int index) {
+		for (String[] equivalence : CONSTRAINT_EQUIVALENCES) {
+			if (constraint.startsWith(equivalence[0], index)) {
+				return equivalence;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The end of the token starting at the index: an escape, a whole character
+	 * class (nested classes included), or a single character
+	 */
+	private static int tokenEnd(String constraint, int index) {
+		char c = constraint.charAt(index);
+		if (c == '\\') {
+			return Math.min(index + 2, constraint.length());
+		} else if (c != '[') {
+			return index + 1;
+		}
+		int depth = 0;
+		int i = index;
+		while (i < constraint.length()) {
+			char d = constraint.charAt(i);
+			if (d == '\\') {
+				i += 2;
+			} else if (d == '[') {
+				depth++;
+				i++;
+				// a ']' first in a class is a literal
+				if (i < constraint.length() && constraint.charAt(i) == '^') {
+					i++;
+				}
+				if (i < constraint.length() && constraint.charAt(i) == ']') {
+					i++;
+				}
+			} else if (d == ']' && --depth == 0) {
+				return i + 1;
+			} else {
+				i++;
+			}
+		}
+		return constraint.length();
+	}
+
+	static boolean isSegmentSafe(String constraint) {
+		if (DEFAULT_CONSTRAINT.equals(constraint)) {
+			return true;
+		}
+		boolean inClass = false;
+		char previous = 0;
+		for (int i = 0; i < constraint.length(); i++) {
+			char c = constraint.charAt(i);
+			if (c == '\\') {
+				if (++i >= constraint.length()) {
+					return false;
+				}
+				char escaped = constraint.charAt(i);
+				if (Character.isLetterOrDigit(escaped)) {
+					// only the escapes known not to match a '/': the hexadecimal, unicode
+					// and octal escapes, \co, \H or a back reference may
+					if (SAFE_ESCAPES.indexOf(escaped) < 0) {
+						return false;
+					}
+					// not the escaped character, as a range start
+					previous = 0;
+				} else if (escaped == '/') {
+					return false;
+				} else {
+					previous = escaped;
+				}
+			} else if (inClass) {
+				if (c == '[' || c == '/') {
+					return false;
+				} else if (c == ']') {
+					inClass = false;
+				} else if (c == '-' && i + 1 < constraint.length() && constraint.charAt(i + 1) != ']') {
+					// a range, it must not contain '/'
+					char to = constraint.charAt(i + 1);
+					if (to == '\\' || (previous <= '/' && to >= '/')) {
+						return false;
+					}
+				}
+				previous = c;
+			} else if (c == '[') {
+				if (i + 1 < constraint.length() && constraint.charAt(i + 1) == '^') {
+					return false;
+				}
+				inClass = true;
+				previous = 0;
+			} else if (c == '.' || c == '/') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return rawPattern;
+	}
+}
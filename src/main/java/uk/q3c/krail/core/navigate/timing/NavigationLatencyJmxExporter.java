@@ -0,0 +1,89 @@
+package uk.q3c.krail.core.navigate.timing;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+
+/**
+ * Registers the {@link NavigationLatencyMXBean} in the platform MBean server,
+ * as {@value #OBJECT_NAME}. A bean already registered with the same name (by a
+ * previous deployment) is replaced.
+ */
+@Singleton
+public class NavigationLatencyJmxExporter implements NavigationLatencyMXBean {
+
+	public static final String OBJECT_NAME = "uk.q3c.krail:type=NavigationLatency";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NavigationLatencyJmxExporter.class);
+
+	private final NavigationLatencyRegistry registry;
+
+	@Inject
+	public NavigationLatencyJmxExporter(NavigationLatencyRegistry registry) {
+		this.registry = registry;
+		register();
+	}
+
+	private void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			LOGGER.info("navigation latencies exported to JMX as {}", name);
+		} catch (JMException e) {
+			LOGGER.warn("unable to export the navigation latencies to JMX", e);
+		}
+	}
+
+	@Override
+	public List<PhaseLatency> getLatencies() {
+		List<PhaseLatency> latencies = new ArrayList<>();
+		for (Map.Entry<SitemapNode, Map<NavigationPhase, LatencyHistogram>> node : registry.getHistograms()
+				.entrySet()) {
+			for (Map.Entry<NavigationPhase, LatencyHistogram> phase : node.getValue().entrySet()) {
+				latencies.add(latency(node.getKey(), phase.getKey(), phase.getValue()));
+			}
+		}
+		return latencies;
+	}
+
+	@Override
+	public List<PhaseLatency> getTotalLatencies() {
+		List<PhaseLatency> latencies = new ArrayList<>();
+		for (Map.Entry<SitemapNode, Map<NavigationPhase, LatencyHistogram>> node : registry.getHistograms()
+				.entrySet()) {
+			LatencyHistogram total = node.getValue().get(NavigationPhase.TOTAL);
+			if (total != null) {
+				latencies.add(latency(node.getKey(), NavigationPhase.TOTAL, total));
+			}
+		}
+		return latencies;
+	}
+
+	@Override
+	public void reset() {
+		registry.reset();
+	}
+
+	private static PhaseLatency latency(SitemapNode node, NavigationPhase phase, LatencyHistogram histogram) {
+		Class<?> viewClass = node.getViewClass();
+		return PhaseLatency.of(viewClass != null ? viewClass.getName() : null, node.getUriPattern(), phase,
+				histogram);
+	}
+}
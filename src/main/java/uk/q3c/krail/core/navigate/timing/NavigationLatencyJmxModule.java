@@ -0,0 +1,17 @@
+package uk.q3c.krail.core.navigate.timing;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * Exports the navigation latencies recorded by the
+ * {@link NavigationLatencyRegistry} to JMX (see
+ * {@link NavigationLatencyJmxExporter}). Optional, add it to the app modules.
+ */
+public class NavigationLatencyJmxModule extends AbstractModule {
+
+	@Override
+	protected void configure() {
+		bind(NavigationLatencyJmxExporter.class).asEagerSingleton();
+	}
+
+}
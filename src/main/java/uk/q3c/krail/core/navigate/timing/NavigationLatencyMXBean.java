@@ -0,0 +1,22 @@
+package uk.q3c.krail.core.navigate.timing;
+
+import java.util.List;
+
+/**
+ * The latencies of the {@link NavigationLatencyRegistry} exported to JMX by
+ * the {@link NavigationLatencyJmxModule}
+ */
+public interface NavigationLatencyMXBean {
+
+	/**
+	 * The statistics of every phase of the navigations to every node
+	 */
+	List<PhaseLatency> getLatencies();
+
+	/**
+	 * The statistics of the whole navigations, one per node
+	 */
+	List<PhaseLatency> getTotalLatencies();
+
+	void reset();
+}
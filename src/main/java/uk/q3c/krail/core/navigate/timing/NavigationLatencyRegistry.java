@@ -0,0 +1,71 @@
+package uk.q3c.krail.core.navigate.timing;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.inject.Singleton;
+
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+import uk.q3c.krail.core.view.KrailView;
+
+/**
+ * The in process {@link NavigationTimer}: a {@link LatencyHistogram} per
+ * sitemap node and phase, created at the first navigation to the node. The
+ * number of histograms is bounded by the sitemap size.
+ */
+@Singleton
+public class NavigationLatencyRegistry implements NavigationTimer {
+
+	private static final NavigationPhase[] PHASES = NavigationPhase.values();
+
+	private final ConcurrentMap<SitemapNode, AtomicReferenceArray<LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+	@Override
+	public void record(NavigationPhase phase, SitemapNode node, Class<? extends KrailView> viewClass,
+			long durationNanos) {
+		AtomicReferenceArray<LatencyHistogram> phases = histograms.computeIfAbsent(node,
+				n -> new AtomicReferenceArray<>(PHASES.length));
+		LatencyHistogram histogram = phases.get(phase.ordinal());
+		if (histogram == null) {
+			phases.compareAndSet(phase.ordinal(), null, new LatencyHistogram());
+			histogram = phases.get(phase.ordinal());
+		}
+		histogram.record(durationNanos);
+	}
+
+	/**
+	 * @return the histogram of the phase of the navigations to the node, null if
+	 *         none has been recorded
+	 */
+	public LatencyHistogram getHistogram(SitemapNode node, NavigationPhase phase) {
+		AtomicReferenceArray<LatencyHistogram> phases = histograms.get(node);
+		return phases != null ? phases.get(phase.ordinal()) : null;
+	}
+
+	/**
+	 * The histograms recorded, by node and phase
+	 */
+	public Map<SitemapNode, Map<NavigationPhase, LatencyHistogram>> getHistograms() {
+		Map<SitemapNode, Map<NavigationPhase, LatencyHistogram>> snapshot = new LinkedHashMap<>();
+		for (Map.Entry<SitemapNode, AtomicReferenceArray<LatencyHistogram>> entry : histograms.entrySet()) {
+			Map<NavigationPhase, LatencyHistogram> phases = new EnumMap<>(NavigationPhase.class);
+			for (NavigationPhase phase : PHASES) {
+				LatencyHistogram histogram = entry.getValue().get(phase.ordinal());
+				if (histogram != null) {
+					phases.put(phase, histogram);
+				}
+			}
+			snapshot.put(entry.getKey(), Collections.unmodifiableMap(phases));
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	public void reset() {
+		histograms.clear();
+	}
+}
@@ -0,0 +1,38 @@
+package uk.q3c.krail.core.navigate.timing;
+
+/**
+ * The phases of a navigation timed by the navigator, in the order they happen
+ */
+public enum NavigationPhase {
+	/**
+	 * From the fragment to the navigation state
+	 */
+	SITEMAP_RESOLUTION,
+	BEFORE_SECURITY_CHECK,
+	AUTHORIZATION,
+	BEFORE_VIEW_CHANGE,
+	/**
+	 * The <code>@BeforeOutboundNavigation</code> callbacks of the current view
+	 */
+	BEFORE_OUTBOUND,
+	VIEW_CONSTRUCTION,
+	/**
+	 * The <code>@BeforeInboundNavigation</code> callbacks of the target view
+	 */
+	BEFORE_INBOUND,
+	CLOSE_WINDOWS,
+	/**
+	 * From the start of the loading of an AsyncLoadingView to its completion
+	 */
+	ASYNC_LOADING,
+	LAYOUT_RESOLUTION,
+	CHANGE_VIEW,
+	AFTER_OUTBOUND,
+	AFTER_INBOUND,
+	AFTER_VIEW_CHANGE,
+	URI_FRAGMENT_UPDATE,
+	/**
+	 * The whole navigation, recorded only when it completes
+	 */
+	TOTAL
+}
@@ -0,0 +1,23 @@
+package uk.q3c.krail.core.navigate.timing;
+
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+import uk.q3c.krail.core.view.KrailView;
+
+/**
+ * Receives the duration of the phases of the navigations. Add one to the
+ * <code>NavigationTimer</code> multibinder (see
+ * <code>KrailUIModule.bindNavigationTimers</code>) to export them, by default
+ * they are recorded by the {@link NavigationLatencyRegistry}.<br>
+ * Called in the navigating thread, with the session locked: the
+ * implementations must be fast and thread safe.
+ */
+public interface NavigationTimer {
+
+	/**
+	 * @param node
+	 *            the target of the navigation
+	 * @param viewClass
+	 *            the view class of the node
+	 */
+	void record(NavigationPhase phase, SitemapNode node, Class<? extends KrailView> viewClass, long durationNanos);
+}
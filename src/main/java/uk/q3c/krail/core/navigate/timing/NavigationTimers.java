@@ -0,0 +1,70 @@
+package uk.q3c.krail.core.navigate.timing;
+
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+
+/**
+ * Times the phases of the navigations for the bound {@link NavigationTimer}s.
+ * Without timers no time is taken.
+ * 
+ * <pre>
+ * long time = timers.start();
+ * ...
+ * time = timers.lap(NavigationPhase.AUTHORIZATION, node, time);
+ * </pre>
+ */
+@Singleton
+public class NavigationTimers {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NavigationTimers.class);
+
+	private final NavigationTimer[] timers;
+
+	@Inject
+	public NavigationTimers(Set<NavigationTimer> timers) {
+		this.timers = timers.toArray(new NavigationTimer[0]);
+	}
+
+	public boolean isEnabled() {
+		return timers.length > 0;
+	}
+
+	/**
+	 * @return the current time, 0 if there are no timers
+	 */
+	public long start() {
+		return timers.length > 0 ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Records the time elapsed since <code>start</code> for the phase
+	 * 
+	 * @return the current time, the start of the next phase
+	 */
+	public long lap(NavigationPhase phase, SitemapNode node, long start) {
+		if (timers.length == 0 || node == null) {
+			return 0L;
+		}
+		long now = System.nanoTime();
+		record(phase, node, now - start);
+		return now;
+	}
+
+	public void record(NavigationPhase phase, SitemapNode node, long durationNanos) {
+		for (NavigationTimer timer : timers) {
+			try {
+				timer.record(phase, node, node.getViewClass(), durationNanos);
+			} catch (RuntimeException e) {
+				// the navigation must not fail for the timing
+				LOGGER.warn("{} failed to record the {} of {}", timer, phase, node, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package uk.q3c.krail.core.navigate.timing;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The statistics of a phase of the navigations to a node, in milliseconds
+ */
+public class PhaseLatency {
+
+	private static final double NANOS_PER_MILLI = 1_000_000d;
+
+	private final String view;
+	private final String node;
+	private final String phase;
+	private final long count;
+	private final double meanMillis;
+	private final double p50Millis;
+	private final double p99Millis;
+	private final double maxMillis;
+
+	@ConstructorProperties({ "view", "node", "phase", "count", "meanMillis", "p50Millis", "p99Millis",
+			"maxMillis" })
+	public PhaseLatency(String view, String node, String phase, long count, double meanMillis, double p50Millis,
+			double p99Millis, double maxMillis) {
+		this.view = view;
+		this.node = node;
+		this.phase = phase;
+		this.count = count;
+		this.meanMillis = meanMillis;
+		this.p50Millis = p50Millis;
+		this.p99Millis = p99Millis;
+		this.maxMillis = maxMillis;
+	}
+
+	public static PhaseLatency of(String view, String node, NavigationPhase phase, LatencyHistogram histogram) {
+		return new PhaseLatency(view, node, phase.name(), histogram.getCount(), histogram.getMean() / NANOS_PER_MILLI,
+				histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+				histogram.getValueAtPercentile(99) / NANOS_PER_MILLI, histogram.getMax() / NANOS_PER_MILLI);
+	}
+
+	public String getView() {
+		return view;
+	}
+
+	public String getNode() {
+		return node;
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanMillis() {
+		return meanMillis;
+	}
+
+	public double getP50Millis() {
+		return p50Millis;
+	}
+
+	public double getP99Millis() {
+		return p99Millis;
+	}
+
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s %s: count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", view, node, phase,
+				count, meanMillis, p50Millis, p99Millis, maxMillis);
+	}
+}
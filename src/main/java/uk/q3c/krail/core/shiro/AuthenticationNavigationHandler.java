@@ -13,7 +13,6 @@
 
 package uk.q3c.krail.core.shiro;
 
-import org.apache.shiro.authz.AuthorizationException;
 import org.apache.shiro.authz.UnauthenticatedException;
 import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
@@ -23,6 +22,8 @@ import uk.q3c.krail.core.guice.uiscope.UIScoped;
 import uk.q3c.krail.core.navigate.DefaultNavigator;
 import uk.q3c.krail.core.navigate.NavigationAuthorizationException;
 import uk.q3c.krail.core.navigate.Navigator;
+import uk.q3c.krail.core.navigate.sitemap.AccesControl;
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecision;
 import uk.q3c.krail.core.navigate.sitemap.NavigationState;
 import uk.q3c.krail.core.navigate.sitemap.StandardPageKey;
 import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.AuthenticationListener;
@@ -55,6 +56,11 @@ public class AuthenticationNavigationHandler implements UnauthenticatedException
 		}
 	}
 
+	/**
+	 * @param throwable
+	 *            null if the navigation has been denied without an exception (see
+	 *            {@link #onDenied(NavigationState, AuthorizationDecision)})
+	 */
 	protected void onUnauthenticatedException(NavigationState targetNavigationState,
 			UnauthenticatedException throwable) {
 		LOGGER.debug("onUnauthenticatedException(targetNavigationState={})", targetNavigationState);
@@ -64,6 +70,15 @@ public class AuthenticationNavigationHandler implements UnauthenticatedException
 		navigatorProvider.get().navigateTo(StandardPageKey.Log_In);
 	}
 
+	@Override
+	public boolean onDenied(NavigationState targetNavigationState, AuthorizationDecision decision) {
+		if (decision == AuthorizationDecision.UNAUTHENTICATED) {
+			onUnauthenticatedException(targetNavigationState, null);
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public boolean handle(ErrorEvent event) {
 		Throwable throwable = event.getThrowable();
@@ -105,16 +120,19 @@ public class AuthenticationNavigationHandler implements UnauthenticatedException
 			if (targetNavigationStateBeforeUnathenticatedException != null) {
 				LOGGER.debug("onSuccessfulLogin(), navigating to previous navigation state '{}'",
 						targetNavigationStateBeforeUnathenticatedException);
-				try {
-					navigatorProvider.get().navigateTo(targetNavigationStateBeforeUnathenticatedException);
-					targetNavigationStateBeforeUnathenticatedException = null;
-					previousNavigationStateBeforeUnathenticatedException = null;
-				} catch (AuthorizationException e) {
+				AccesControl rule = targetNavigationStateBeforeUnathenticatedException.getSitemapNode()
+						.getAccesControlRule();
+				AuthorizationDecision decision = rule.decide(event.getSubject());
+				if (!decision.isGranted()) {
 					// the user has just logged in and does not have the permission for the required page
 					LOGGER.info("The user does not have the permission for the required page: will be logged-out");
 					event.getSubject().logout();
-					throw e;
+					throw new NavigationAuthorizationException(targetNavigationStateBeforeUnathenticatedException,
+							decision.toException(rule));
 				}
+				navigatorProvider.get().navigateTo(targetNavigationStateBeforeUnathenticatedException);
+				targetNavigationStateBeforeUnathenticatedException = null;
+				previousNavigationStateBeforeUnathenticatedException = null;
 			} else {
 				// navigazione diretta alla pagina di login?
 				navigatorProvider.get().navigateTo(StandardPageKey.Private_Home);
@@ -139,10 +157,8 @@ public class AuthenticationNavigationHandler implements UnauthenticatedException
 		LOGGER.info("logout(user={})", event.getLoggedOutSubjectPrincipals());
 		// this or another UI has logged out
 		Navigator navigator = navigatorProvider.get();
-		try {
-			navigator.getCurrentNavigationState().getSitemapNode().getAccesControlRule()
-					.checkAuthorization(event.getSubject());
-		} catch (AuthorizationException e) {
+		if (!navigator.getCurrentNavigationState().getSitemapNode().getAccesControlRule()
+				.decide(event.getSubject()).isGranted()) {
 			// the user is no loger authorized for this page, must navigatre away
 			navigator.navigateTo(StandardPageKey.Log_Out);
 		}
@@ -18,130 +18,453 @@ import org.apache.shiro.authc.ExcessiveAttemptsException;
 import org.apache.shiro.authc.UsernamePasswordToken;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Thread safe and bounded: every username has its own record, locked only by the attempts for that username, with
+ * <ul>
+ * <li>the failed attempts in a sliding window ({@link #setFailureWindow(long, TimeUnit)}): a user locked out after
+ * {@link #setMaximumAttempts(int)} failures gets an attempt back as soon as the oldest failure leaves the window</li>
+ * <li>a ring buffer of the latest {@link #setHistorySize(int)} log entries</li>
+ * </ul>
+ * The records of the usernames without attempts for longer than {@link #setIdleTimeout(long, TimeUnit)} (and not
+ * locked out) are evicted, so a burst of attempts with random usernames does not stay in memory.
+ */
 @Singleton
 public class DefaultLoginAttemptLog implements LoginAttemptLog {
 
 	public enum LogOutcome {
 		PASS, FAIL, RESET
 	}
-    private final Map<String, List<LogEntry>> history = new TreeMap<>();
-    private final Map<String, Integer> unsuccessfulAttempts = new TreeMap<>();
-    private final Map<String, LocalDateTime> lastSuccessful = new TreeMap<>();
-    private int maxAttempts = 3;
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final int DEFAULT_HISTORY_SIZE = 32;
+    public static final long DEFAULT_FAILURE_WINDOW_MINUTES = 15;
+    public static final long DEFAULT_IDLE_TIMEOUT_HOURS = 24;
+
+    private final ConcurrentMap<String, UserRecord> records = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile int historySize = DEFAULT_HISTORY_SIZE;
+    private volatile long failureWindowNanos = TimeUnit.MINUTES.toNanos(DEFAULT_FAILURE_WINDOW_MINUTES);
+    private volatile long idleTimeoutNanos = TimeUnit.HOURS.toNanos(DEFAULT_IDLE_TIMEOUT_HOURS);
 
     @Override
     public void setMaximumAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maximum attempts must be at least 1: " + maxAttempts);
+        }
         this.maxAttempts = maxAttempts;
     }
 
-    @Override
-    public void recordSuccessfulAttempt(UsernamePasswordToken upToken) {
-        LogEntry log = createLog(upToken, LogOutcome.PASS);
-        unsuccessfulAttempts.remove(upToken.getUsername());
-        lastSuccessful.put(upToken.getUsername(), log.dateTime);
+    /**
+     * The failed attempts older than the window no longer count, by default {@value #DEFAULT_FAILURE_WINDOW_MINUTES}
+     * minutes
+     */
+    public void setFailureWindow(long duration, TimeUnit unit) {
+        this.failureWindowNanos = unit.toNanos(duration);
     }
 
-    private LogEntry createLog(UsernamePasswordToken upToken, LogOutcome logOutcome) {
-        String username = upToken.getUsername();
-        return createLog(username, logOutcome);
+    /**
+     * The number of log entries kept per username, by default {@value #DEFAULT_HISTORY_SIZE}
+     */
+    public void setHistorySize(int historySize) {
+        if (historySize < 1) {
+            throw new IllegalArgumentException("history size must be at least 1: " + historySize);
+        }
+        this.historySize = historySize;
     }
 
-    private LogEntry createLog(String username, LogOutcome logOutcome) {
-        LogEntry logEntry = new LogEntry(logOutcome);
-        List<LogEntry> list = history.get(username);
-        if (list == null) {
-            list = new ArrayList<>();
-            history.put(username, list);
+    /**
+     * How long the record of a username without attempts is kept, by default {@value #DEFAULT_IDLE_TIMEOUT_HOURS}
+     * hours (the date of the last success is lost with it)
+     */
+    public void setIdleTimeout(long duration, TimeUnit unit) {
+        this.idleTimeoutNanos = unit.toNanos(duration);
+    }
 
-        }
-        list.add(logEntry);
-        return logEntry;
+    public int getMaximumAttempts() {
+        return maxAttempts;
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public long getFailureWindowNanos() {
+        return failureWindowNanos;
+    }
+
+    public long getIdleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    @Override
+    public void recordSuccessfulAttempt(UsernamePasswordToken upToken) {
+        record(upToken.getUsername(), new LogEntry(LogOutcome.PASS));
     }
 
     /**
-     * records a failed login attempt and throws a ExcessiveAttemptsException if the number of attempts exceeds
-     * {@link #maxAttempts}
+     * records a failed login attempt and throws a ExcessiveAttemptsException if the number of attempts in the window
+     * reaches {@link #setMaximumAttempts(int)}
      *
      * @see uk.q3c.krail.core.shiro.LoginAttemptLog#recordFailedAttempt(org.apache.shiro.authc.UsernamePasswordToken)
      */
     @Override
     public void recordFailedAttempt(UsernamePasswordToken upToken) {
-        createLog(upToken, LogOutcome.FAIL);
+        int attemptsLeft = record(upToken.getUsername(), new LogEntry(LogOutcome.FAIL));
+        if (attemptsLeft <= 0) {
+            throw new ExcessiveAttemptsException("Login failed after maximum attempts");
+        }
+    }
 
-        Integer failedAttempts = unsuccessfulAttempts.get(upToken.getUsername());
-        if (failedAttempts == null) {
-            failedAttempts = 0;
+    /**
+     * Records the entry and updates the counters as required by its outcome
+     *
+     * @return the attempts remaining after the entry
+     */
+    protected int record(String username, LogEntry entry) {
+        return record(username, entry, System.nanoTime());
+    }
+
+    /**
+     * @param nanoTime
+     *         the time of the entry in {@link System#nanoTime()} terms, in the past for the entries replayed from a
+     *         persistent log
+     */
+    protected int record(String username, LogEntry entry, long nanoTime) {
+        sweepIfDue();
+        while (true) {
+            UserRecord record = records.computeIfAbsent(username, name -> new UserRecord());
+            synchronized (record) {
+                if (record.evicted) {
+                    // removed meanwhile, the next computeIfAbsent creates a new one
+                    continue;
+                }
+                persist(username, entry);
+                record.apply(entry, nanoTime, maxAttempts, historySize);
+                return maxAttempts - record.failuresInWindow(System.nanoTime(), failureWindowNanos);
+            }
         }
-        unsuccessfulAttempts.put(upToken.getUsername(), new Integer(failedAttempts + 1));
-        int attemptsLeft = attemptsRemaining(upToken.getUsername());
-        if (attemptsLeft == 0) {
-            throw new ExcessiveAttemptsException("Login failed after maximum attempts");
+    }
+
+    /**
+     * Called with the record of the username locked, before the entry is applied: the persistent implementations
+     * write the entry here, so that the entries of a username are written in the order they are applied
+     */
+    protected void persist(String username, LogEntry entry) {
+    }
+
+    /**
+     * The times of the failures of the username still in the window, in {@link System#nanoTime()} terms, oldest
+     * first: the persistent implementations save them, as the history may not hold them
+     */
+    protected long[] failuresInWindow(String username) {
+        UserRecord record = records.get(username);
+        if (record == null) {
+            return new long[0];
+        }
+        synchronized (record) {
+            return record.failureTimesInWindow(System.nanoTime(), failureWindowNanos);
+        }
+    }
+
+    /**
+     * Adds a failure saved by {@link #failuresInWindow(String)}, without a log entry
+     */
+    protected void restoreFailure(String username, long nanoTime) {
+        while (true) {
+            UserRecord record = records.computeIfAbsent(username, name -> new UserRecord());
+            synchronized (record) {
+                if (record.evicted) {
+                    continue;
+                }
+                if (record.isEmpty() || nanoTime - record.lastAccess > 0) {
+                    record.lastAccess = nanoTime;
+                }
+                record.addFailure(nanoTime, maxAttempts);
+                return;
+            }
         }
     }
 
+    /**
+     * Clears the failures of the username without a log entry, before they are restored by
+     * {@link #restoreFailure(String, long)}
+     */
+    protected void clearFailures(String username) {
+        UserRecord record = records.get(username);
+        if (record != null) {
+            synchronized (record) {
+                record.clearFailures();
+            }
+        }
+    }
+
+    /**
+     * The usernames with a record (a live view)
+     */
+    protected Set<String> usernames() {
+        return Collections.unmodifiableSet(records.keySet());
+    }
+
     @Override
     public int attemptsRemaining(String username) {
-        Integer attemptsMade = unsuccessfulAttempts.get(username);
-        // no unsuccessful attempt has been made to login, there won't be an entry
-        if (attemptsMade == null) {
-            attemptsMade = 0;
+        UserRecord record = records.get(username);
+        if (record == null) {
+            return maxAttempts;
+        }
+        synchronized (record) {
+            return maxAttempts - record.failuresInWindow(System.nanoTime(), failureWindowNanos);
         }
-        return maxAttempts - attemptsMade;
     }
 
     @Override
     public void clearHistory(String username) {
-        history.remove(username);
+        UserRecord record = records.get(username);
+        if (record != null) {
+            synchronized (record) {
+                record.clearHistory();
+            }
+        }
     }
 
     @Override
     public void resetAttemptCount(String username) {
-        unsuccessfulAttempts.remove(username);
-        createLog(username, LogOutcome.RESET);
+        record(username, new LogEntry(LogOutcome.RESET));
     }
 
     @Override
     public void clearHistory() {
-        history.clear();
+        for (UserRecord record : records.values()) {
+            synchronized (record) {
+                record.clearHistory();
+            }
+        }
     }
 
     @Override
     public void resetAttemptCount() {
-        unsuccessfulAttempts.clear();
+        for (UserRecord record : records.values()) {
+            synchronized (record) {
+                record.clearFailures();
+            }
+        }
     }
 
     @Override
     public LocalDateTime dateOfLastSuccess(String username) {
-        return lastSuccessful.get(username);
+        UserRecord record = records.get(username);
+        if (record == null) {
+            return null;
+        }
+        synchronized (record) {
+            return record.lastSuccess;
+        }
     }
 
+    /**
+     * @return the latest entry, or null if there is none
+     */
     @Override
     public LogEntry latestLog(String username) {
-        List<LogEntry> list = history.get(username);
-        return list.get(list.size() - 1);
+        UserRecord record = records.get(username);
+        if (record == null) {
+            return null;
+        }
+        synchronized (record) {
+            return record.latest();
+        }
     }
 
     @Override
     public ImmutableList<LogEntry> historyFor(String username) {
-        List<LogEntry> list = history.get(username);
-        if (list == null) {
-            list = new ArrayList<>();
+        UserRecord record = records.get(username);
+        if (record == null) {
+            return ImmutableList.of();
+        }
+        synchronized (record) {
+            return record.history();
+        }
+    }
+
+    /**
+     * The number of usernames with a record
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Evicts the records idle for longer than the idle timeout, unless they are locked out. Called by the attempts at
+     * most once per minute, or explicitly.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        records.forEach((username, record) -> {
+            synchronized (record) {
+                if (now - record.lastAccess > idleTimeoutNanos && record.failuresInWindow(now, failureWindowNanos) == 0) {
+                    record.evicted = true;
+                    records.remove(username, record);
+                }
+            }
+        });
+    }
+
+    private void sweepIfDue() {
+        long now = System.nanoTime();
+        long next = nextSweep.get();
+        if (now - next >= 0 && nextSweep.compareAndSet(next, now + TimeUnit.MINUTES.toNanos(1))) {
+            evictIdle();
+        }
+    }
+
+    /**
+     * The state of a username, guarded by its own monitor
+     */
+    private static final class UserRecord {
+        /**
+         * the times of the failures, a ring of maxAttempts times: when full the oldest is overwritten, so a locked out
+         * user trying again stays locked out
+         */
+        private long[] failureTimes = new long[0];
+        private int failureHead;
+        private int failureCount;
+
+        private LogEntry[] history = new LogEntry[0];
+        private int historyHead;
+        private int historyCount;
+
+        private LocalDateTime lastSuccess;
+        private long lastAccess;
+        private boolean evicted;
+
+        private void apply(LogEntry entry, long now, int maxAttempts, int historySize) {
+            lastAccess = now;
+            addToHistory(entry, historySize);
+            switch (entry.getLogOutcome()) {
+                case PASS:
+                    clearFailures();
+                    lastSuccess = entry.getDateTime();
+                    break;
+                case FAIL:
+                    addFailure(now, maxAttempts);
+                    break;
+                case RESET:
+                    clearFailures();
+                    break;
+            }
+        }
+
+        private void addFailure(long now, int maxAttempts) {
+            if (failureTimes.length != maxAttempts) {
+                failureTimes = resize(failureTimes, failureHead, failureCount, maxAttempts);
+                failureCount = Math.min(failureCount, maxAttempts);
+                failureHead = failureCount % maxAttempts;
+            }
+            failureTimes[failureHead] = now;
+            failureHead = (failureHead + 1) % failureTimes.length;
+            failureCount = Math.min(failureCount + 1, failureTimes.length);
+        }
+
+        private int failuresInWindow(long now, long window) {
+            int failures = 0;
+            for (int i = 0; i < failureCount; i++) {
+                if (now - failureTimes[i] < window) {
+                    failures++;
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * oldest first
+         */
+        private long[] failureTimesInWindow(long now, long window) {
+            long[] failures = new long[failuresInWindow(now, window)];
+            int found = 0;
+            for (int i = failureCount; i > 0; i--) {
+                long time = failureTimes[Math.floorMod(failureHead - i, failureTimes.length)];
+                if (now - time < window) {
+                    failures[found++] = time;
+                }
+            }
+            return failures;
+        }
+
+        private boolean isEmpty() {
+            return failureCount == 0 && historyCount == 0 && lastSuccess == null;
+        }
+
+        private void clearFailures() {
+            failureCount = 0;
+            failureHead = 0;
+        }
+
+        private void addToHistory(LogEntry entry, int historySize) {
+            if (history.length != historySize) {
+                LogEntry[] resized = new LogEntry[historySize];
+                int kept = Math.min(historyCount, historySize);
+                for (int i = 0; i < kept; i++) {
+                    resized[i] = history[Math.floorMod(historyHead - kept + i, history.length)];
+                }
+                history = resized;
+                historyCount = kept;
+                historyHead = kept % historySize;
+            }
+            history[historyHead] = entry;
+            historyHead = (historyHead + 1) % history.length;
+            historyCount = Math.min(historyCount + 1, history.length);
+        }
+
+        private void clearHistory() {
+            Arrays.fill(history, null);
+            historyCount = 0;
+            historyHead = 0;
+        }
+
+        private LogEntry latest() {
+            return historyCount > 0 ? history[Math.floorMod(historyHead - 1, history.length)] : null;
+        }
+
+        /**
+         * oldest first
+         */
+        private ImmutableList<LogEntry> history() {
+            ImmutableList.Builder<LogEntry> builder = ImmutableList.builder();
+            for (int i = historyCount; i > 0; i--) {
+                builder.add(history[Math.floorMod(historyHead - i, history.length)]);
+            }
+            return builder.build();
+        }
+
+        private static long[] resize(long[] ring, int head, int count, int capacity) {
+            long[] resized = new long[capacity];
+            int kept = Math.min(count, capacity);
+            for (int i = 0; i < kept; i++) {
+                resized[i] = ring[Math.floorMod(head - kept + i, ring.length)];
+            }
+            return resized;
         }
-        return ImmutableList.copyOf(list);
     }
 
-    public class LogEntry {
+    public static class LogEntry {
         private final LocalDateTime dateTime;
         private final LogOutcome logOutcome;
 
         public LogEntry(LogOutcome logOutcome) {
+            this(logOutcome, LocalDateTime.now());
+        }
+
+        public LogEntry(LogOutcome logOutcome, LocalDateTime dateTime) {
             this.logOutcome = logOutcome;
-            dateTime = LocalDateTime.now();
+            this.dateTime = dateTime;
         }
 
         public LocalDateTime getDateTime() {
@@ -151,6 +474,11 @@ public class DefaultLoginAttemptLog implements LoginAttemptLog {
         public LogOutcome getLogOutcome() {
             return logOutcome;
         }
+
+        @Override
+        public String toString() {
+            return logOutcome + "@" + dateTime;
+        }
     }
 
 }
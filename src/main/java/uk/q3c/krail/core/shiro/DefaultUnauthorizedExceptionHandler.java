@@ -19,6 +19,7 @@ import org.apache.shiro.authz.UnauthorizedException;
 
 import uk.q3c.krail.core.navigate.NavigationAuthorizationException;
 import uk.q3c.krail.core.navigate.Navigator;
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecision;
 import uk.q3c.krail.core.navigate.sitemap.NavigationState;
 import uk.q3c.krail.core.navigate.sitemap.StandardPageKey;
 import uk.q3c.krail.core.user.notify.UserNotifier;
@@ -39,6 +40,11 @@ public class DefaultUnauthorizedExceptionHandler implements UnauthorizedExceptio
 		this.notifier = notifier;
 	}
 
+	/**
+	 * @param throwable
+	 *            null if the navigation has been denied without an exception (see
+	 *            {@link #onDenied(NavigationState, AuthorizationDecision)})
+	 */
 	protected void onUnauthorizedException(NavigationState targetNavigationState, UnauthorizedException throwable) {
 		notifier.notifyNoPermission(targetNavigationState, throwable);
 		Navigator navigator = navigatorProvider.get();
@@ -48,6 +54,15 @@ public class DefaultUnauthorizedExceptionHandler implements UnauthorizedExceptio
 		}
 	}
 
+	@Override
+	public boolean onDenied(NavigationState targetNavigationState, AuthorizationDecision decision) {
+		if (decision == AuthorizationDecision.UNAUTHORIZED) {
+			onUnauthorizedException(targetNavigationState, null);
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public boolean handle(ErrorEvent event) {
 		Throwable throwable = event.getThrowable();
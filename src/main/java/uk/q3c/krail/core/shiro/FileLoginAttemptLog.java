@@ -0,0 +1,320 @@
+package uk.q3c.krail.core.shiro;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.shiro.util.Destroyable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link DefaultLoginAttemptLog} that survives the restarts: every attempt is appended to memory mapped segments in
+ * a local directory (see {@link LoginAttemptJournal}) and the counters are rebuilt at startup by replaying them.
+ * <ul>
+ * <li>the appends only copy the record in the mapped segment, that the OS writes even if the process crashes; the
+ * segment is forced to the disk (fsync) every {@link #DEFAULT_FLUSH_INTERVAL_MILLIS} ms if written, and when it is
+ * full</li>
+ * <li>every {@link #DEFAULT_SEGMENTS_BEFORE_COMPACTION} full segments, they are compacted in a background thread with
+ * the previous snapshot into a new snapshot: the history of the usernames still tracked (see
+ * {@link DefaultLoginAttemptLog#setIdleTimeout(long, TimeUnit)}), with the last success, and their failures still
+ * in the window (a reset or a cleared history doesn't match the failures of the history)</li>
+ * </ul>
+ * The directory is locked, it can't be shared by more processes (nor by the nodes of a cluster), and it's released
+ * when the Shiro module is destroyed with the servlet context. See <code>StandardShiroModule.bindLoginAttemptLog()</code>
+ * for the binding.<br>
+ * The appends of all the usernames share the single active segment, so they are serialized: the per username
+ * locking of {@link DefaultLoginAttemptLog} still avoids the contention in memory, but a login waits for the
+ * concurrent ones to copy their record (a few tens of bytes, without I/O: the segment is forced by the background
+ * thread). A log with a higher rate of logins than a single writer can take should not persist them.
+ */
+@Singleton
+public class FileLoginAttemptLog extends DefaultLoginAttemptLog implements Closeable, Destroyable {
+
+    /**
+     * The directory of the files
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+    @BindingAnnotation
+    public @interface Directory {
+    }
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    public static final int DEFAULT_SEGMENTS_BEFORE_COMPACTION = 4;
+    public static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private static final Logger log = LoggerFactory.getLogger(FileLoginAttemptLog.class);
+
+    private final LoginAttemptJournal journal;
+    private final int segmentsBeforeCompaction;
+    private final ScheduledExecutorService background;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    /**
+     * the entries replayed at startup are not appended again
+     */
+    private volatile boolean replaying;
+    private volatile boolean dirty;
+    private volatile boolean closed;
+
+    @Inject
+    public FileLoginAttemptLog(@Directory String directory) throws IOException {
+        this(Paths.get(directory), DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS,
+                DEFAULT_SEGMENTS_BEFORE_COMPACTION);
+    }
+
+    public FileLoginAttemptLog(Path directory, int segmentSize, long flushIntervalMillis,
+                               int segmentsBeforeCompaction) throws IOException {
+        super();
+        this.segmentsBeforeCompaction = segmentsBeforeCompaction;
+        journal = new LoginAttemptJournal(directory, segmentSize);
+        replaying = true;
+        try {
+            journal.open((type, epochMillis, username) -> replay(this, type, epochMillis, username));
+        } finally {
+            replaying = false;
+        }
+        evictIdle();
+        log.info("login attempts of {} usernames restored from {}", size(), directory);
+        background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "krail-login-attempt-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void persist(String username, LogEntry entry) {
+        if (!replaying) {
+            append(typeOf(entry.getLogOutcome()), toEpochMillis(entry.getDateTime()), username);
+        }
+    }
+
+    @Override
+    public void clearHistory(String username) {
+        if (!replaying) {
+            append(LoginAttemptJournal.CLEAR_HISTORY, System.currentTimeMillis(), username);
+        }
+        super.clearHistory(username);
+    }
+
+    @Override
+    public void clearHistory() {
+        if (!replaying) {
+            append(LoginAttemptJournal.CLEAR_ALL_HISTORY, System.currentTimeMillis(), null);
+        }
+        super.clearHistory();
+    }
+
+    @Override
+    public void resetAttemptCount() {
+        if (!replaying) {
+            append(LoginAttemptJournal.RESET_ALL, System.currentTimeMillis(), null);
+        }
+        super.resetAttemptCount();
+    }
+
+    /**
+     * Forces the written segment to the disk, called periodically
+     */
+    public void flush() {
+        if (dirty) {
+            dirty = false;
+            MappedByteBuffer active;
+            synchronized (journal) {
+                active = journal.getActive();
+            }
+            active.force();
+        }
+    }
+
+    /**
+     * Forces the segment to the disk and releases the directory
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (journal) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        background.shutdown();
+        // a running compaction completes before the directory is released
+        try {
+            if (!background.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("the compaction of the login attempt log did not complete within {} seconds",
+                        CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (journal) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Closes the log when the Shiro module is destroyed, see <code>DefaultBindingManager.contextDestroyed()</code>
+     */
+    @Override
+    public void destroy() throws IOException {
+        close();
+    }
+
+    private void append(byte type, long epochMillis, String username) {
+        synchronized (journal) {
+            if (closed) {
+                throw new IllegalStateException("login attempt log closed");
+            }
+            try {
+                if (!journal.append(type, epochMillis, username)) {
+                    MappedByteBuffer full = journal.roll();
+                    background.execute(full::force);
+                    scheduleCompaction();
+                    journal.append(type, epochMillis, username);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("unable to write the login attempt", e);
+            }
+            dirty = true;
+        }
+    }
+
+    private void scheduleCompaction() throws IOException {
+        List<Long> closedSegments = journal.closedSegments();
+        if (closedSegments.size() >= segmentsBeforeCompaction && compacting.compareAndSet(false, true)) {
+            long lastSequence = closedSegments.get(closedSegments.size() - 1);
+            background.execute(() -> {
+                try {
+                    compact(lastSequence);
+                } catch (IOException | RuntimeException e) {
+                    log.error("compaction of the login attempt log failed", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Replays the snapshot and the full segments in a separate log, then writes its state as the new snapshot. The
+     * live log is not locked, the appends continue in the active segment.
+     */
+    private void compact(long lastSequence) throws IOException {
+        DefaultLoginAttemptLog compacted = new DefaultLoginAttemptLog();
+        compacted.setMaximumAttempts(getMaximumAttempts());
+        compacted.setHistorySize(getHistorySize());
+        compacted.setFailureWindow(getFailureWindowNanos(), TimeUnit.NANOSECONDS);
+        compacted.setIdleTimeout(getIdleTimeoutNanos(), TimeUnit.NANOSECONDS);
+        long read = journal.readCompactable(lastSequence,
+                (type, epochMillis, username) -> replay(compacted, type, epochMillis, username));
+        compacted.evictIdle();
+        journal.writeSnapshot(read, out -> {
+            for (String username : compacted.usernames()) {
+                LocalDateTime lastSuccess = compacted.dateOfLastSuccess(username);
+                List<LogEntry> history = compacted.historyFor(username);
+                boolean successInHistory = false;
+                for (LogEntry entry : history) {
+                    successInHistory |= entry.getLogOutcome() == DefaultLoginAttemptLog.LogOutcome.PASS
+                            && entry.getDateTime().equals(lastSuccess);
+                }
+                if (lastSuccess != null && !successInHistory) {
+                    out.record(LoginAttemptJournal.PASS, toEpochMillis(lastSuccess), username);
+                }
+                for (LogEntry entry : history) {
+                    out.record(typeOf(entry.getLogOutcome()), toEpochMillis(entry.getDateTime()), username);
+                }
+                // the history replayed may not give the failures, then the actual ones
+                out.record(LoginAttemptJournal.CLEAR_FAILURES, System.currentTimeMillis(), username);
+                long nanoNow = System.nanoTime();
+                long millisNow = System.currentTimeMillis();
+                for (long failure : compacted.failuresInWindow(username)) {
+                    long epochMillis = millisNow - TimeUnit.NANOSECONDS.toMillis(nanoNow - failure);
+                    out.record(LoginAttemptJournal.FAILURE, epochMillis, username);
+                }
+            }
+        });
+        log.debug("login attempt log compacted up to segment {}, {} usernames", read, compacted.size());
+    }
+
+    /**
+     * Applies a record read from the files to the log, at the time it has been written
+     */
+    private static void replay(DefaultLoginAttemptLog target, byte type, long epochMillis, String username) {
+        long nanoTime = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - epochMillis);
+        switch (type) {
+            case LoginAttemptJournal.PASS:
+            case LoginAttemptJournal.FAIL:
+            case LoginAttemptJournal.RESET:
+                LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis),
+                        ZoneId.systemDefault());
+                target.record(username, new LogEntry(outcomeOf(type), dateTime), nanoTime);
+                break;
+            case LoginAttemptJournal.CLEAR_FAILURES:
+                target.clearFailures(username);
+                break;
+            case LoginAttemptJournal.FAILURE:
+                target.restoreFailure(username, nanoTime);
+                break;
+            case LoginAttemptJournal.CLEAR_HISTORY:
+                target.clearHistory(username);
+                break;
+            case LoginAttemptJournal.RESET_ALL:
+                target.resetAttemptCount();
+                break;
+            case LoginAttemptJournal.CLEAR_ALL_HISTORY:
+                target.clearHistory();
+                break;
+            default:
+                log.warn("unknown login attempt record type {}, ignored", type);
+        }
+    }
+
+    private static byte typeOf(LogOutcome outcome) {
+        switch (outcome) {
+            case PASS:
+                return LoginAttemptJournal.PASS;
+            case FAIL:
+                return LoginAttemptJournal.FAIL;
+            default:
+                return LoginAttemptJournal.RESET;
+        }
+    }
+
+    private static LogOutcome outcomeOf(byte type) {
+        switch (type) {
+            case LoginAttemptJournal.PASS:
+                return LogOutcome.PASS;
+            case LoginAttemptJournal.FAIL:
+                return LogOutcome.FAIL;
+            default:
+                return LogOutcome.RESET;
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
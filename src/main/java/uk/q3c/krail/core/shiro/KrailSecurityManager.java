@@ -48,6 +48,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import uk.q3c.krail.core.guice.threadscope.ThreadCache;
+import uk.q3c.krail.core.guice.threadscope.ThreadCache.Cache;
 import uk.q3c.krail.core.shiro.loginevent.AbstractAuthenticationEvent.SuccesfulLoginEventImpl;
 import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.AuthenticationListener;
 import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.AuthenticationNotifier;
@@ -220,6 +222,14 @@ public class KrailSecurityManager extends DefaultSecurityManager implements Auth
 		}
 	}
 
+	/**
+	 * Forgets the subject the current thread inherited from the thread that created it: the threads of a shared pool
+	 * are created by whichever thread submits a task, they must not keep its subject
+	 */
+	public void clearInheritedSubject() {
+		threadLocalSubject.remove();
+	}
+
 	// TODO:use @RunAs annotation instead
 	public void runAsSubject(Subject subject, Runnable runnable) {
 		Subject oldSubject = this.threadLocalSubject.get();
@@ -229,9 +239,12 @@ public class KrailSecurityManager extends DefaultSecurityManager implements Auth
 		}
 		this.threadLocalSubject.set(subject);
 		MDC.put("subject", subject.toString());
+		// the ThreadScoped instances of the caller (if any) are not visible to the task
+		Cache previousThreadScope = ThreadCache.openScope();
 		try {
 			runnable.run();
 		} finally {
+			ThreadCache.closeScope(previousThreadScope);
 			MDC.remove("subject");
 			this.threadLocalSubject.set(oldSubject);
 		}
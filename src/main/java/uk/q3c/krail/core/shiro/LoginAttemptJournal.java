@@ -0,0 +1,334 @@
+package uk.q3c.krail.core.shiro;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * The files of a {@link FileLoginAttemptLog}: append only segments of fixed size, memory mapped, and a snapshot of
+ * the segments compacted.
+ * <p>
+ * A record is <code>length (int), crc32 (int), type (byte), epoch millis (long), username length (short),
+ * username (UTF-8)</code>; the length is written last, a zero length marks the end of a segment, a wrong crc a torn
+ * write (the rest of the segment is ignored). The snapshot starts with a {@link #SNAPSHOT} record holding, in place
+ * of the time, the sequence of the last segment it contains.
+ * <p>
+ * Not thread safe: {@link FileLoginAttemptLog} serializes the appends.
+ */
+final class LoginAttemptJournal implements Closeable {
+
+    static final byte PASS = 0;
+    static final byte FAIL = 1;
+    static final byte RESET = 2;
+    static final byte CLEAR_HISTORY = 3;
+    static final byte RESET_ALL = 4;
+    static final byte CLEAR_ALL_HISTORY = 5;
+    static final byte SNAPSHOT = 6;
+    /**
+     * in the snapshot only: the failures of the username are cleared, then restored by the {@link #FAILURE} records
+     * that follow, as its history may not match them
+     */
+    static final byte CLEAR_FAILURES = 7;
+    /**
+     * in the snapshot only: a failure still in the window, not in the history
+     */
+    static final byte FAILURE = 8;
+
+    static final int MAX_USERNAME_BYTES = 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(LoginAttemptJournal.class);
+    private static final int HEADER_BYTES = 8;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{20})\\.log");
+    private static final String SNAPSHOT_NAME = "snapshot.log";
+
+    /**
+     * Receives the records read from the files
+     */
+    interface RecordHandler {
+        void record(byte type, long epochMillis, String username);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    /**
+     * for the appends only
+     */
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer active;
+    private long activeSequence;
+
+    LoginAttemptJournal(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another log of this process
+            acquired = null;
+        }
+        lock = acquired;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException(
+                    "the login attempt log in " + directory + " is in use by another process or log");
+        }
+    }
+
+    /**
+     * Reads the snapshot and the segments after it, then starts a new segment for the appends
+     */
+    void open(RecordHandler handler) throws IOException {
+        long snapshotSequence = readSnapshot(handler);
+        long lastSequence = snapshotSequence;
+        for (long sequence : segmentSequences()) {
+            if (sequence <= snapshotSequence) {
+                // compacted, the delete didn't complete
+                Files.deleteIfExists(segmentPath(sequence));
+            } else {
+                readSegment(segmentPath(sequence), handler);
+                lastSequence = sequence;
+            }
+        }
+        activeSequence = Math.max(lastSequence, 0);
+        roll();
+    }
+
+    /**
+     * @return false if there is no room in the active segment, {@link #roll()} and try again
+     */
+    boolean append(byte type, long epochMillis, String username) {
+        byte[] name = username != null ? username.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (name.length > MAX_USERNAME_BYTES) {
+            log.debug("username of {} bytes not persisted", name.length);
+            return true;
+        }
+        int length = 1 + 8 + 2 + name.length;
+        int position = active.position();
+        // keep room for the terminating zero length
+        if (position + HEADER_BYTES + length + 4 > segmentSize) {
+            return false;
+        }
+        ByteBuffer payload = active.duplicate();
+        payload.position(position + HEADER_BYTES);
+        payload.put(type).putLong(epochMillis).putShort((short) name.length).put(name);
+        crc.reset();
+        ByteBuffer written = active.duplicate();
+        written.position(position + HEADER_BYTES).limit(position + HEADER_BYTES + length);
+        crc.update(written);
+        active.putInt(position + 4, (int) crc.getValue());
+        active.putInt(position, length);
+        active.position(position + HEADER_BYTES + length);
+        return true;
+    }
+
+    /**
+     * Starts a new segment
+     *
+     * @return the segment closed, null if none
+     */
+    MappedByteBuffer roll() throws IOException {
+        MappedByteBuffer closed = active;
+        activeSequence++;
+        try (FileChannel channel = FileChannel.open(segmentPath(activeSequence), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            active = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        return closed;
+    }
+
+    MappedByteBuffer getActive() {
+        return active;
+    }
+
+    long getActiveSequence() {
+        return activeSequence;
+    }
+
+    /**
+     * The segments before the active one, oldest first
+     */
+    List<Long> closedSegments() throws IOException {
+        List<Long> closed = new ArrayList<>();
+        for (long sequence : segmentSequences()) {
+            if (sequence < activeSequence) {
+                closed.add(sequence);
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Reads the snapshot and the closed segments up to <code>lastSequence</code>, that aren't written anymore
+     *
+     * @return the sequence of the last segment read
+     */
+    long readCompactable(long lastSequence, RecordHandler handler) throws IOException {
+        long last = readSnapshot(handler);
+        for (long sequence : segmentSequences()) {
+            if (sequence > last && sequence <= lastSequence) {
+                readSegment(segmentPath(sequence), handler);
+                last = sequence;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Replaces the snapshot with the records written by the writer, then deletes the segments it contains
+     */
+    void writeSnapshot(long lastSequence, SnapshotWriter writer) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            CRC32 crc = new CRC32();
+            RecordHandler out = (type, epochMillis, username) -> {
+                byte[] name = username != null ? username.getBytes(StandardCharsets.UTF_8) : new byte[0];
+                int length = 1 + 8 + 2 + name.length;
+                if (buffer.remaining() < HEADER_BYTES + length) {
+                    flush(channel, buffer);
+                }
+                crc.reset();
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                payload.put(type).putLong(epochMillis).putShort((short) name.length).put(name);
+                payload.flip();
+                crc.update(payload.duplicate());
+                buffer.putInt(length).putInt((int) crc.getValue()).put(payload);
+            };
+            out.record(SNAPSHOT, lastSequence, null);
+            writer.write(out);
+            buffer.putInt(0);
+            flush(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_NAME), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        for (long sequence : segmentSequences()) {
+            if (sequence <= lastSequence) {
+                Files.deleteIfExists(segmentPath(sequence));
+            }
+        }
+    }
+
+    interface SnapshotWriter {
+        void write(RecordHandler out);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (active != null) {
+            active.force();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    /**
+     * @return the sequence of the last segment contained in the snapshot, 0 if there is no snapshot
+     */
+    private long readSnapshot(RecordHandler handler) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_NAME);
+        if (!Files.exists(snapshot)) {
+            return 0;
+        }
+        long[] sequence = {0};
+        readSegment(snapshot, (type, epochMillis, username) -> {
+            if (type == SNAPSHOT) {
+                sequence[0] = epochMillis;
+            } else {
+                handler.record(type, epochMillis, username);
+            }
+        });
+        return sequence[0];
+    }
+
+    private static void readSegment(Path path, RecordHandler handler) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int position = buffer.position();
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (length == 0) {
+                return;
+            }
+            if (length < 11 || length > buffer.remaining()) {
+                log.warn("corrupt record at {} of {}, the rest is ignored", position, path);
+                return;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                log.warn("torn record at {} of {}, the rest is ignored", position, path);
+                return;
+            }
+            byte type = payload.get();
+            long epochMillis = payload.getLong();
+            byte[] name = new byte[payload.getShort() & 0xFFFF];
+            payload.get(name);
+            handler.record(type, epochMillis, name.length > 0 ? new String(name, StandardCharsets.UTF_8) : null);
+            buffer.position(position + HEADER_BYTES + length);
+        }
+    }
+
+    private List<Long> segmentSequences() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    sequences.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("segment-%020d.log", sequence));
+    }
+}
@@ -13,6 +13,8 @@ import com.vaadin.server.VaadinSession;
 import uk.q3c.krail.core.guice.KrailRequestInterceptor;
 import uk.q3c.krail.core.guice.errors.ErrorHandler;
 import uk.q3c.krail.core.guice.uiscope.UIScoped;
+import uk.q3c.krail.core.navigate.NavigationDenialHandler;
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecisionCache;
 import uk.q3c.krail.core.shiro.SecuritySessionModule.SessionProvider;
 import uk.q3c.krail.core.shiro.loginevent.AuthenticationEvent.AuthenticationListener;
 
@@ -41,8 +43,14 @@ public class ShiroVaadinModule extends AbstractModule {
 		Multibinder<ErrorHandler> errorHandlersBinder = Multibinder.newSetBinder(binder(), ErrorHandler.class);
 		errorHandlersBinder.addBinding().to(UnauthorizedExceptionHandler.class);
 		errorHandlersBinder.addBinding().to(UnauthenticatedExceptionHandler.class);
+		// the same handlers, called by the navigator without the exceptions
+		Multibinder<NavigationDenialHandler> denialHandlersBinder = Multibinder.newSetBinder(binder(),
+				NavigationDenialHandler.class);
+		denialHandlersBinder.addBinding().to(UnauthenticatedExceptionHandler.class);
+		denialHandlersBinder.addBinding().to(UnauthorizedExceptionHandler.class);
 
 		authenticationListenersBinder = Multibinder.newSetBinder(binder(), AuthenticationListener.class);
+		bindAuthorizationDecisionCache();
 		
 		bindUnauthenticatedHandler();
 		bindUnauthorisedHandler();
@@ -63,6 +71,16 @@ public class ShiroVaadinModule extends AbstractModule {
 		return authenticationListenersBinder.addBinding();
 	}
 
+	/**
+	 * The cache of the authorization decisions on the sitemap nodes is notified
+	 * of the logins and logouts, to discard the decisions of the principal.
+	 * Override this to notify a subclass of {@link AuthorizationDecisionCache}
+	 * bound in its place
+	 */
+	protected void bindAuthorizationDecisionCache() {
+		addAuthenticationListenerBinding().to(AuthorizationDecisionCache.class);
+	}
+
 	@Provides
 	KrailSecurityManager providesSecurityManager() {
 		return (KrailSecurityManager) SecurityUtils.getSecurityManager();
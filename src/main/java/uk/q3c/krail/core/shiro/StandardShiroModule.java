@@ -75,7 +75,13 @@ public class StandardShiroModule extends ShiroModule {
 	}
 
 	/**
-	 * Override this to bind your own implementation of {@link LoginAttemptLog}
+	 * Override this to bind your own implementation of {@link LoginAttemptLog}, for example the attempts kept across
+	 * the restarts by {@link FileLoginAttemptLog}:
+	 *
+	 * <pre>
+	 * bind(LoginAttemptLog.class).to(FileLoginAttemptLog.class);
+	 * bindConstant().annotatedWith(FileLoginAttemptLog.Directory.class).to(&quot;/var/lib/myapp/login-attempts&quot;);
+	 * </pre>
 	 */
 	protected void bindLoginAttemptLog() {
 		bind(LoginAttemptLog.class).to(DefaultLoginAttemptLog.class);
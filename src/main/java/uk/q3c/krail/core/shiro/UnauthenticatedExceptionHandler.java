@@ -14,7 +14,18 @@
 package uk.q3c.krail.core.shiro;
 
 import uk.q3c.krail.core.guice.errors.ErrorHandler;
+import uk.q3c.krail.core.navigate.NavigationDenialHandler;
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecision;
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
 
-public interface UnauthenticatedExceptionHandler extends ErrorHandler {
+public interface UnauthenticatedExceptionHandler extends ErrorHandler, NavigationDenialHandler {
 
+	/**
+	 * Override to handle the navigations denied to unauthenticated subjects
+	 * without the exception, by default left to {@link #handle(ErrorEvent)}
+	 */
+	@Override
+	default boolean onDenied(NavigationState targetNavigationState, AuthorizationDecision decision) {
+		return false;
+	}
 }
@@ -7,9 +7,12 @@ import uk.q3c.krail.core.navigate.DefaultInvalidURIExceptionHandler;
 import uk.q3c.krail.core.navigate.DefaultNavigationCallbackHandler;
 import uk.q3c.krail.core.navigate.DefaultNavigator;
 import uk.q3c.krail.core.navigate.InvalidURIExceptionHandler;
+import uk.q3c.krail.core.navigate.NavigationDenialHandler;
 import uk.q3c.krail.core.navigate.Navigator;
 import uk.q3c.krail.core.navigate.sitemap.annotations.ViewLayout;
 import uk.q3c.krail.core.navigate.sitemap.impl.ParametersImpl;
+import uk.q3c.krail.core.navigate.timing.NavigationLatencyRegistry;
+import uk.q3c.krail.core.navigate.timing.NavigationTimer;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -51,6 +54,11 @@ public abstract class KrailUIModule extends AbstractModule {
 		bindPrivateViewDefaultLayout();
 		Multibinder<ErrorHandler> errorHandlersBinder = Multibinder.newSetBinder(binder(), ErrorHandler.class);
 		bindNavigationErrorHandlers(errorHandlersBinder);
+		Multibinder<NavigationTimer> navigationTimersBinder = Multibinder.newSetBinder(binder(), NavigationTimer.class);
+		bindNavigationTimers(navigationTimersBinder);
+		Multibinder<NavigationDenialHandler> denialHandlersBinder = Multibinder.newSetBinder(binder(),
+				NavigationDenialHandler.class);
+		bindNavigationDenialHandlers(denialHandlersBinder);
 	}
 
 	/**
@@ -83,6 +91,21 @@ public abstract class KrailUIModule extends AbstractModule {
 		bindInvalidURIExceptionHandler();
 	}
 
+	/**
+	 * Override to add your {@link NavigationTimer}s, or to remove the in process
+	 * {@link NavigationLatencyRegistry} (no time is taken without timers)
+	 */
+	protected void bindNavigationTimers(Multibinder<NavigationTimer> navigationTimersBinder) {
+		navigationTimersBinder.addBinding().to(NavigationLatencyRegistry.class);
+	}
+
+	/**
+	 * Override to add your {@link NavigationDenialHandler}s, the ones of Shiro are
+	 * added by the ShiroVaadinModule
+	 */
+	protected void bindNavigationDenialHandlers(Multibinder<NavigationDenialHandler> denialHandlersBinder) {
+	}
+
 	/**
 	 * the {@link KrailErrorHandler} calls this handler in response to an attempt to
 	 * navigate to an invalid URI. If you have defined your own ErrorHandler you may
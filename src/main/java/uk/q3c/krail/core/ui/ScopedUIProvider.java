@@ -17,6 +17,7 @@ import com.google.inject.Injector;
 import com.google.inject.Provider;
 import com.vaadin.server.UICreateEvent;
 import com.vaadin.server.UIProvider;
+import com.vaadin.server.VaadinSession;
 import com.vaadin.ui.UI;
 import com.vaadin.util.CurrentInstance;
 import org.slf4j.Logger;
@@ -58,6 +59,10 @@ public abstract class ScopedUIProvider extends UIProvider implements Provider<Sc
 		ScopedUI ui = (ScopedUI) injector.getInstance(uiClass);
 		ui.setInstanceKey(uiKey);
 		ui.setScope(scope);
+		scope.attach(uiKey, VaadinSession.getCurrent());
+		// also when a subclass of ScopedUI doesn't call super.detach(), and for the UIs closed after missing
+		// heartbeats, detached when Vaadin removes them from the session
+		ui.addDetachListener(event -> scope.releaseScope(uiKey));
 
 		log.debug("Returning instance of {} with key {}", uiClass.getName(), uiKey);
 		return ui;
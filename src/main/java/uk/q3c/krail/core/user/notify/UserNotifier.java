@@ -34,6 +34,10 @@ import uk.q3c.krail.core.user.UserModule;
  */
 public interface UserNotifier {
 
+	/**
+	 * @param throwable
+	 *            null if the navigation has been denied without an exception
+	 */
 	void notifyNoPermission(NavigationState targetNavigationState, UnauthorizedException throwable);
 
 	void notifyInvalidURI(InvalidURIException error);
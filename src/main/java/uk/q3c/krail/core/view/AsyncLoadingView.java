@@ -0,0 +1,27 @@
+package uk.q3c.krail.core.view;
+
+import java.util.concurrent.CompletionStage;
+
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+
+/**
+ * A view that loads its data asynchronously. The navigator calls
+ * {@link #load(NavigationState)} after the view has accepted the navigation
+ * (after <code>@BeforeInboundNavigation</code>): if the loading has not already
+ * completed, a {@link PlaceholderView} is shown and the session lock released,
+ * and the view is shown with <code>UI.access</code> when the loading
+ * completes.<br>
+ * The loading must not touch the components out of the session lock. Use Vaadin
+ * push, or polling, for the view to reach the browser without waiting for the
+ * next request.
+ */
+public interface AsyncLoadingView extends KrailView {
+
+	/**
+	 * Starts loading the data for the navigation state.<br>
+	 * If another navigation supersedes this one, the stage is cancelled (with
+	 * <code>toCompletableFuture().cancel(false)</code>) and its result ignored. If
+	 * it completes exceptionally the navigator shows the error view.
+	 */
+	CompletionStage<?> load(NavigationState navigationState);
+}
@@ -15,6 +15,8 @@ package uk.q3c.krail.core.view;
 import com.google.inject.*;
 
 import java.lang.annotation.Annotation;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
@@ -22,17 +24,21 @@ import org.apache.shiro.authz.annotation.RequiresRoles;
 import org.apache.shiro.authz.annotation.RequiresUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import uk.q3c.krail.core.guice.uiscope.UIScope;
 import uk.q3c.krail.core.navigate.DefaultNavigator;
 import uk.q3c.krail.core.navigate.sitemap.annotations.View;
 import uk.q3c.krail.core.navigate.sitemap.annotations.ViewLayout;
 import uk.q3c.krail.core.ui.KrailUIModule.PrivateViewDefaultLayout;
 import uk.q3c.krail.core.ui.KrailUIModule.PublicViewDefaultLayout;
 
+@Singleton
 public class DefaultLayoutFactory implements LayoutFactory {
 
 	private static final Logger log = LoggerFactory.getLogger(DefaultLayoutFactory.class);
 	private final Injector injector;
+	/**
+	 * The providers of the layouts, looked up once per class
+	 */
+	private final ConcurrentMap<Class<?>, Provider<?>> providers = new ConcurrentHashMap<>();
 
 	Class<? extends ViewLayout> publicViewDefaultLayout;
 	Class<? extends ViewLayout> privateViewDefaultLayout;
@@ -65,13 +71,10 @@ public class DefaultLayoutFactory implements LayoutFactory {
 
 	public <T extends ViewLayout> T get(Class<T> viewLayoutClass) {
 		if (viewLayoutClass != null) {
-			TypeLiteral<T> typeLiteral = TypeLiteral.get(viewLayoutClass);
-			Key<T> key = Key.get(typeLiteral);
-			Provider<T> unscoped = injector.getProvider(key);
-			UIScope.getCurrent().scope(key, unscoped);
+			@SuppressWarnings("unchecked")
+			Provider<T> provider = (Provider<T>) providers.computeIfAbsent(viewLayoutClass, injector::getProvider);
 			log.debug("getting or retrieving instance of {}", viewLayoutClass);
-			T layout = injector.getInstance(key);
-			return layout;
+			return provider.get();
 		} else {
 			return null;
 		}
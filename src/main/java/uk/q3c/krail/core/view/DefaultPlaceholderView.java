@@ -0,0 +1,19 @@
+package uk.q3c.krail.core.view;
+
+import com.google.inject.Inject;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.ProgressBar;
+
+public class DefaultPlaceholderView extends VerticalViewBase implements PlaceholderView {
+
+	@Inject
+	protected DefaultPlaceholderView() {
+		super();
+		setSizeFull();
+		ProgressBar progressBar = new ProgressBar();
+		progressBar.setIndeterminate(true);
+		addComponent(progressBar);
+		setComponentAlignment(progressBar, Alignment.MIDDLE_CENTER);
+	}
+
+}
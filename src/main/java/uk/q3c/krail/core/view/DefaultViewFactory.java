@@ -12,33 +12,63 @@
  */
 package uk.q3c.krail.core.view;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.google.inject.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import uk.q3c.krail.core.guice.uiscope.UIScope;
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
 
+/**
+ * Provides the views from the injector, with the scope of their binding. The providers are looked up once per view
+ * class. The views annotated with {@link KeepAlive} are reused from the {@link ViewCache} of the UI when navigating to a
+ * node with the same parameters, the others are taken from the {@link ViewPrefetcher} of the UI if it has built them in
+ * advance.
+ */
+@Singleton
 public class DefaultViewFactory implements ViewFactory {
     private static Logger log = LoggerFactory.getLogger(DefaultViewFactory.class);
     private final Injector injector;
+    private final Provider<ViewCache> viewCacheProvider;
+    private final Provider<ViewPrefetcher> viewPrefetcherProvider;
+    private final ConcurrentMap<Class<?>, Provider<?>> providers = new ConcurrentHashMap<>();
 
     @Inject
-    protected DefaultViewFactory(Injector injector) {
+    protected DefaultViewFactory(Injector injector, Provider<ViewCache> viewCacheProvider,
+            Provider<ViewPrefetcher> viewPrefetcherProvider) {
         super();
         this.injector = injector;
+        this.viewCacheProvider = viewCacheProvider;
+        this.viewPrefetcherProvider = viewPrefetcherProvider;
     }
 
     /* (non-Javadoc)
      * @see uk.q3c.krail.core.view.ViewFactory#get(java.lang.Class)
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends KrailView> T get(Class<T> viewClass) {
-        TypeLiteral<T> typeLiteral = TypeLiteral.get(viewClass);
-        Key<T> key = Key.get(typeLiteral);
-        Provider<T> unscoped = injector.getProvider(key);
-        UIScope.getCurrent()
-               .scope(key, unscoped);
+        Provider<T> provider = (Provider<T>) providers.computeIfAbsent(viewClass, injector::getProvider);
         log.debug("getting or retrieving instance of {}", viewClass);
-        T view = injector.getInstance(key);
-        return view;
+        return provider.get();
+    }
+
+    @Override
+    public KrailView get(NavigationState navigationState) {
+        Class<? extends KrailView> viewClass = navigationState.getSitemapNode().getViewClass();
+        if (!viewClass.isAnnotationPresent(KeepAlive.class)) {
+            return getPrefetched(viewClass);
+        }
+        return getKeptAlive(navigationState, viewClass);
+    }
+
+    private <T extends KrailView> T getKeptAlive(NavigationState navigationState, Class<T> viewClass) {
+        return viewCacheProvider.get().get(navigationState, viewClass, () -> getPrefetched(viewClass));
+    }
+
+    private <T extends KrailView> T getPrefetched(Class<T> viewClass) {
+        T view = viewPrefetcherProvider.get().take(viewClass);
+        return view != null ? view : get(viewClass);
     }
 }
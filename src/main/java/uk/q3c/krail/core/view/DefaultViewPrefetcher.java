@@ -0,0 +1,221 @@
+package uk.q3c.krail.core.view;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.shiro.subject.Subject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+import uk.q3c.krail.core.guice.uiscope.UIScoped;
+import uk.q3c.krail.core.navigate.NavigationTransitions;
+import uk.q3c.krail.core.navigate.sitemap.AuthorizationDecisionCache;
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+import uk.q3c.krail.core.navigate.sitemap.Sitemap;
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+import uk.q3c.krail.core.shiro.KrailSecurityManager;
+
+/**
+ * After each navigation, once the request has released the session lock,
+ * builds the views of the nodes most frequently navigated to from the current
+ * one (see {@link NavigationTransitions}), then the views of its children in
+ * the sitemap. The views are built by a thread of a shared pool with the
+ * session locked ({@link UI#accessSynchronously(Runnable)}): a
+ * {@link UI#access(Runnable)} from the request would run the prefetch in the
+ * request thread, while it releases the lock, delaying the response. The pool
+ * thread runs as the subject of the navigation, with its own
+ * {@link uk.q3c.krail.core.guice.threadscope.ThreadScoped} instances (see
+ * {@link KrailSecurityManager#runAsSubject(Subject, Runnable)}). Only the views
+ * the subject is authorized to see are built, at most as many as the budget of
+ * the UI (see {@link Budget}).<br>
+ * A prefetched view is handed out for any navigation to its class: the
+ * parameters reach the view through the navigation callbacks, not at
+ * construction.<br>
+ * Bound {@link UIScoped}, it's only accessed with the session locked.
+ */
+public class DefaultViewPrefetcher implements ViewPrefetcher {
+
+	/**
+	 * The maximum number of views prefetched in a UI, {@link #DEFAULT_BUDGET} if
+	 * not bound. 0 disables the prefetch.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD })
+	@BindingAnnotation
+	public @interface Budget {
+	}
+
+	public static final int DEFAULT_BUDGET = 2;
+
+	private static Logger log = LoggerFactory.getLogger(DefaultViewPrefetcher.class);
+
+	/**
+	 * The threads waiting for the session locks and building the views, shared by
+	 * the UIs. They stop when idle.
+	 */
+	private static final Executor PREFETCH_EXECUTOR = prefetchExecutor();
+
+	private final ViewFactory viewFactory;
+	private final Sitemap sitemap;
+	private final NavigationTransitions transitions;
+	private final Provider<Subject> subjectProvider;
+	private final KrailSecurityManager securityManager;
+	private final AuthorizationDecisionCache authorizationCache;
+
+	private final Map<Class<?>, KrailView> prefetched = new LinkedHashMap<>();
+	private int budget = DEFAULT_BUDGET;
+	/**
+	 * Incremented at each navigation, a prefetch is skipped if another navigation
+	 * happened in the meantime
+	 */
+	private int generation;
+	private long prefetchCount;
+	private long hitCount;
+
+	@Inject
+	protected DefaultViewPrefetcher(ViewFactory viewFactory, Sitemap sitemap, NavigationTransitions transitions,
+			Provider<Subject> subjectProvider, KrailSecurityManager securityManager,
+			AuthorizationDecisionCache authorizationCache) {
+		this.viewFactory = viewFactory;
+		this.sitemap = sitemap;
+		this.transitions = transitions;
+		this.subjectProvider = subjectProvider;
+		this.securityManager = securityManager;
+		this.authorizationCache = authorizationCache;
+	}
+
+	@Inject(optional = true)
+	public void setBudget(@Budget int budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("negative view prefetch budget: " + budget);
+		}
+		this.budget = budget;
+	}
+
+	public int getBudget() {
+		return budget;
+	}
+
+	@Override
+	public void navigated(NavigationState from, NavigationState to) {
+		SitemapNode node = to.getSitemapNode();
+		transitions.record(from != null ? from.getSitemapNode() : null, node);
+		int scheduled = ++generation;
+		UI ui = UI.getCurrent();
+		if (budget == 0 || ui == null) {
+			return;
+		}
+		// the subject of the request, not the one of the pool thread
+		Subject subject = subjectProvider.get();
+		PREFETCH_EXECUTOR.execute(() -> {
+			// created by a thread that may run as another subject
+			securityManager.clearInheritedSubject();
+			securityManager.runAsSubject(subject, () -> {
+				try {
+					// waits for the request to release the lock
+					ui.accessSynchronously(() -> {
+						if (scheduled == generation) {
+							prefetch(node, subject);
+						}
+					});
+				} catch (UIDetachedException e) {
+					log.debug("UI detached, prefetch skipped", e);
+				}
+			});
+		});
+	}
+
+	@Override
+	public <T extends KrailView> T take(Class<T> viewClass) {
+		KrailView view = prefetched.remove(viewClass);
+		if (view == null) {
+			return null;
+		}
+		hitCount++;
+		log.debug("using the prefetched view {}", view);
+		return viewClass.cast(view);
+	}
+
+	/**
+	 * The number of views built in advance
+	 */
+	public long getPrefetchCount() {
+		return prefetchCount;
+	}
+
+	/**
+	 * The number of prefetched views navigated to
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	protected void prefetch(SitemapNode node, Subject subject) {
+		Set<Class<? extends KrailView>> candidates = candidates(node, subject);
+		// the views no longer likely are discarded, they have never been attached
+		prefetched.keySet().retainAll(candidates);
+		for (Class<? extends KrailView> viewClass : candidates) {
+			if (prefetched.containsKey(viewClass)) {
+				continue;
+			}
+			try {
+				prefetched.put(viewClass, viewFactory.get(viewClass));
+				prefetchCount++;
+				log.debug("prefetched the view {} from {}", viewClass, node);
+			} catch (RuntimeException e) {
+				log.debug("unable to prefetch the view {}", viewClass, e);
+			}
+		}
+	}
+
+	private static Executor prefetchExecutor() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "krail-view-prefetcher");
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * At most budget view classes, the most likely first
+	 */
+	protected Set<Class<? extends KrailView>> candidates(SitemapNode node, Subject subject) {
+		Set<Class<? extends KrailView>> candidates = new LinkedHashSet<>();
+		addCandidates(candidates, node, transitions.getMostFrequentFrom(node, budget), subject);
+		addCandidates(candidates, node, sitemap.getChildren(node), subject);
+		return candidates;
+	}
+
+	private void addCandidates(Set<Class<? extends KrailView>> candidates, SitemapNode node,
+			Iterable<SitemapNode> nodes, Subject subject) {
+		for (SitemapNode candidate : nodes) {
+			if (candidates.size() >= budget) {
+				return;
+			}
+			Class<? extends KrailView> viewClass = candidate.getViewClass();
+			if (viewClass != null && viewClass != node.getViewClass() && authorizationCache.isAuthorized(candidate, subject)) {
+				candidates.add(viewClass);
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package uk.q3c.krail.core.view;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the instances of the view in the {@link ViewCache} of the UI, so that
+ * navigating back to the same node with the same parameters reuses the view
+ * instead of building it again. The navigation callbacks are still called on
+ * the reused instance.<br>
+ * Meant for the views that are expensive to build: the cached views hold their
+ * component tree for as long as they stay in the cache.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface KeepAlive {
+
+	/**
+	 * The maximum number of instances of the view (one per set of parameters)
+	 * kept in a UI, the least recently used is evicted first
+	 */
+	int maxInstances() default 1;
+
+	/**
+	 * How long an instance is kept after the last navigation to it
+	 */
+	long idleTimeout() default 10;
+
+	TimeUnit timeUnit() default TimeUnit.MINUTES;
+
+	/**
+	 * The share of the budget of the UI (see {@link ViewCache}) taken by an
+	 * instance, higher for the heavier views
+	 */
+	int weight() default 1;
+}
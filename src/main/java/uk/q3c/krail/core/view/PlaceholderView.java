@@ -0,0 +1,8 @@
+package uk.q3c.krail.core.view;
+
+/**
+ * Shown while an {@link AsyncLoadingView} is loading
+ */
+public interface PlaceholderView extends KrailView {
+
+}
@@ -0,0 +1,262 @@
+package uk.q3c.krail.core.view;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+
+import uk.q3c.krail.core.guice.uiscope.UIScoped;
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+import uk.q3c.krail.core.navigate.sitemap.SitemapNode;
+import uk.q3c.krail.core.navigate.sitemap.impl.ParametersImpl;
+
+/**
+ * The views annotated with {@link KeepAlive} built in a UI, by node and
+ * parameters (compared with equals, the values from the uri are new Strings at
+ * every navigation).<br>
+ * The least recently used views are evicted when a view has more instances
+ * than its {@link KeepAlive#maxInstances()}, or when the sum of the
+ * {@link KeepAlive#weight()}s exceeds the budget of the UI (see
+ * {@link Budget}); the idle ones are evicted at the next access to the cache.
+ * <br>
+ * Bound {@link UIScoped}, it's only accessed with the session locked.
+ */
+public class ViewCache {
+
+	/**
+	 * The budget of a UI, as the sum of the {@link KeepAlive#weight()}s of the
+	 * views kept. {@link #DEFAULT_BUDGET} if not bound.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD })
+	@BindingAnnotation
+	public @interface Budget {
+	}
+
+	public static final int DEFAULT_BUDGET = 8;
+
+	private static Logger log = LoggerFactory.getLogger(ViewCache.class);
+
+	private static final class CacheKey {
+		private final SitemapNode node;
+		private final Map<String, Object> parameters;
+		private final int hash;
+
+		private CacheKey(SitemapNode node, Map<String, Object> parameters) {
+			this.node = node;
+			this.parameters = parameters;
+			this.hash = 31 * node.hashCode() + parameters.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof CacheKey) {
+				CacheKey other = (CacheKey) obj;
+				return node == other.node && parameters.equals(other.parameters);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return node + "" + parameters;
+		}
+	}
+
+	private static final class CachedView {
+		private final Class<?> viewClass;
+		private final KrailView view;
+		private final KeepAlive keepAlive;
+		private long lastAccess;
+
+		private CachedView(Class<?> viewClass, KrailView view, KeepAlive keepAlive, long now) {
+			this.viewClass = viewClass;
+			this.view = view;
+			this.keepAlive = keepAlive;
+			this.lastAccess = now;
+		}
+
+		private boolean isIdle(long now) {
+			return now - lastAccess > keepAlive.timeUnit().toNanos(keepAlive.idleTimeout());
+		}
+	}
+
+	/**
+	 * access ordered, the eldest is the least recently used
+	 */
+	private final LinkedHashMap<CacheKey, CachedView> views = new LinkedHashMap<>(16, 0.75f, true);
+	private int budget = DEFAULT_BUDGET;
+	private int weight;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	@Inject(optional = true)
+	public void setBudget(@Budget int budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("negative view cache budget: " + budget);
+		}
+		this.budget = budget;
+	}
+
+	public int getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return the view of the navigation state kept in the cache, otherwise the
+	 *         one built by the builder, that is kept if the view class is
+	 *         annotated with {@link KeepAlive}
+	 */
+	public <T extends KrailView> T get(NavigationState navigationState, Class<T> viewClass,
+			Supplier<? extends T> builder) {
+		KeepAlive keepAlive = viewClass.getAnnotation(KeepAlive.class);
+		CacheKey key = keepAlive != null ? keyOf(navigationState) : null;
+		if (key == null) {
+			return builder.get();
+		}
+		long now = System.nanoTime();
+		evictIdle(now);
+		CachedView cached = views.get(key);
+		if (cached != null && viewClass.isInstance(cached.view)) {
+			hitCount++;
+			cached.lastAccess = now;
+			log.debug("reusing the view {} for {}", cached.view, key);
+			return viewClass.cast(cached.view);
+		}
+		missCount++;
+		T view = builder.get();
+		if (keepAlive.maxInstances() > 0 && keepAlive.weight() <= budget) {
+			remove(key);
+			views.put(key, new CachedView(viewClass, view, keepAlive, now));
+			weight += keepAlive.weight();
+			evictExceeding(key, viewClass, keepAlive);
+		}
+		return view;
+	}
+
+	/**
+	 * Evicts the instances of the view class, to be called when they are no
+	 * longer valid
+	 */
+	public void invalidate(Class<? extends KrailView> viewClass) {
+		Iterator<CachedView> iterator = views.values().iterator();
+		while (iterator.hasNext()) {
+			CachedView cached = iterator.next();
+			if (viewClass.isAssignableFrom(cached.viewClass)) {
+				iterator.remove();
+				weight -= cached.keepAlive.weight();
+			}
+		}
+	}
+
+	public void clear() {
+		views.clear();
+		weight = 0;
+	}
+
+	public int size() {
+		return views.size();
+	}
+
+	/**
+	 * The sum of the weights of the views kept
+	 */
+	public int getWeight() {
+		return weight;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Only the explicit parameters identify the view, the states with other
+	 * parameters are not cached
+	 */
+	private static CacheKey keyOf(NavigationState navigationState) {
+		if (!(navigationState.parameters() instanceof ParametersImpl)) {
+			return null;
+		}
+		ParametersImpl parameters = (ParametersImpl) navigationState.parameters();
+		return new CacheKey(navigationState.getSitemapNode(), new HashMap<>(parameters.getValues()));
+	}
+
+	private void remove(CacheKey key) {
+		CachedView removed = views.remove(key);
+		if (removed != null) {
+			weight -= removed.keepAlive.weight();
+		}
+	}
+
+	private void evictIdle(long now) {
+		Iterator<Map.Entry<CacheKey, CachedView>> iterator = views.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<CacheKey, CachedView> entry = iterator.next();
+			if (entry.getValue().isIdle(now)) {
+				evict(iterator, entry, "idle");
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used instances of the view class over its
+	 * maximum, then the least recently used views over the budget, except the
+	 * one just added
+	 */
+	private void evictExceeding(CacheKey added, Class<?> viewClass, KeepAlive keepAlive) {
+		int instances = 0;
+		for (CachedView cached : views.values()) {
+			if (cached.viewClass == viewClass) {
+				instances++;
+			}
+		}
+		Iterator<Map.Entry<CacheKey, CachedView>> iterator = views.entrySet().iterator();
+		while (iterator.hasNext() && (instances > keepAlive.maxInstances() || weight > budget)) {
+			Map.Entry<CacheKey, CachedView> entry = iterator.next();
+			if (Objects.equals(entry.getKey(), added)) {
+				continue;
+			}
+			boolean sameClass = entry.getValue().viewClass == viewClass;
+			if (weight > budget || (sameClass && instances > keepAlive.maxInstances())) {
+				evict(iterator, entry, weight > budget ? "over budget" : "too many instances");
+				if (sameClass) {
+					instances--;
+				}
+			}
+		}
+	}
+
+	private void evict(Iterator<Map.Entry<CacheKey, CachedView>> iterator, Map.Entry<CacheKey, CachedView> entry,
+			String reason) {
+		iterator.remove();
+		weight -= entry.getValue().keepAlive.weight();
+		evictionCount++;
+		log.debug("view {} for {} evicted: {}", entry.getValue().view, entry.getKey(), reason);
+	}
+}
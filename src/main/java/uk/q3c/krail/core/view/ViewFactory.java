@@ -13,6 +13,7 @@
 package uk.q3c.krail.core.view;
 
 import uk.q3c.krail.core.guice.uiscope.UIScoped;
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
 
 /**
  * Implementation return an injected KrailView instance, scoped to {@link UIScoped}. The interface is provided
@@ -27,4 +28,13 @@ public interface ViewFactory {
 
 	public abstract <T extends KrailView> T get(Class<T> viewClass);
 
+	/**
+	 * The view of the node of the navigation state, implementations may reuse a
+	 * view previously built for the same node and parameters (see
+	 * {@link KeepAlive})
+	 */
+	public default KrailView get(NavigationState navigationState) {
+		return get(navigationState.getSitemapNode().getViewClass());
+	}
+
 }
\ No newline at end of file
@@ -14,6 +14,8 @@ package uk.q3c.krail.core.view;
 
 import com.google.inject.AbstractModule;
 
+import uk.q3c.krail.core.guice.uiscope.UIScoped;
+
 /**
  * 
  * Maps standard views (Login, Logout and Error Views) to their implementations. These can all be overridden if
@@ -31,6 +33,7 @@ public class ViewModule extends AbstractModule {
 		// the fallback in case a View is not defined
 		bind(KrailView.class).to(ErrorView.class);
 		bindErrorView();
+		bindPlaceholderView();
 		bindRequestSystemAccountView();
 		bindRequestSystemAccountResetView();
 		bindRequestSystemAccountEnableView();
@@ -38,6 +41,8 @@ public class ViewModule extends AbstractModule {
 		bindRequestSystemAccountRefreshView();
 		bindSystemAccountView();
 		bindViewFactory();
+		bindViewCache();
+		bindViewPrefetcher();
 		bindLayoutFactory();
 
 	}
@@ -46,6 +51,23 @@ public class ViewModule extends AbstractModule {
 		bind(ViewFactory.class).to(DefaultViewFactory.class);
 	}
 	
+	/**
+	 * Override to change the budget of the views kept in each UI, see {@link KeepAlive}
+	 */
+	protected void bindViewCache() {
+		bind(ViewCache.class).in(UIScoped.class);
+		bindConstant().annotatedWith(ViewCache.Budget.class).to(ViewCache.DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Override to provide your own {@link ViewPrefetcher}, or to change the number of views prefetched in each UI (0
+	 * disables the prefetch)
+	 */
+	protected void bindViewPrefetcher() {
+		bind(ViewPrefetcher.class).to(DefaultViewPrefetcher.class).in(UIScoped.class);
+		bindConstant().annotatedWith(DefaultViewPrefetcher.Budget.class).to(DefaultViewPrefetcher.DEFAULT_BUDGET);
+	}
+
 	protected void bindLayoutFactory() {
 		bind(LayoutFactory.class).to(DefaultLayoutFactory.class);
 	}
@@ -93,6 +115,13 @@ public class ViewModule extends AbstractModule {
 		bind(RequestSystemAccountCreateView.class).to(DefaultRequestSystemAccountCreateView.class);
 	}
 
+	/**
+	 * Override to provide your own {@link PlaceholderView}, shown while an {@link AsyncLoadingView} is loading
+	 */
+	protected void bindPlaceholderView() {
+		bind(PlaceholderView.class).to(DefaultPlaceholderView.class);
+	}
+
 	/**
 	 * Override to provide your ErrorView
 	 */
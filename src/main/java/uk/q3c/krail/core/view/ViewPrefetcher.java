@@ -0,0 +1,25 @@
+package uk.q3c.krail.core.view;
+
+import uk.q3c.krail.core.navigate.sitemap.NavigationState;
+
+/**
+ * Builds the views that are likely to be navigated to next, before the
+ * navigation happens, so that the {@link ViewFactory} can hand them out
+ * instead of building them when the user clicks.
+ */
+public interface ViewPrefetcher {
+
+	/**
+	 * Called by the navigator when a navigation has completed
+	 *
+	 * @param from
+	 *            the previous state, null for the first navigation of the UI
+	 */
+	void navigated(NavigationState from, NavigationState to);
+
+	/**
+	 * @return the view prefetched for the class, removed from the prefetched
+	 *         ones, or null if there isn't one
+	 */
+	<T extends KrailView> T take(Class<T> viewClass);
+}
@@ -0,0 +1,180 @@
+package uk.q3c.krail.core.shiro;
+
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileLoginAttemptLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private FileLoginAttemptLog log;
+
+    @Before
+    public void setup() throws IOException {
+        directory = folder.getRoot().toPath();
+        log = open();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        log.close();
+    }
+
+    @Test
+    public void restart_attempts() throws IOException {
+        // given
+        log.recordFailedAttempt(token("alice"));
+        log.recordFailedAttempt(token("alice"));
+        log.recordSuccessfulAttempt(token("bob"));
+        // when
+        restart();
+        // then
+        assertThat(log.attemptsRemaining("alice")).isEqualTo(1);
+        assertThat(log.historyFor("alice")).hasSize(2);
+        assertThat(log.dateOfLastSuccess("bob")).isNotNull();
+    }
+
+    @Test
+    public void restart_resetAttemptCount_username() throws IOException {
+        // given
+        log.recordFailedAttempt(token("alice"));
+        log.resetAttemptCount("alice");
+        // when
+        restart();
+        // then
+        assertThat(log.attemptsRemaining("alice")).isEqualTo(3);
+    }
+
+    @Test
+    public void restart_clearHistory_username() throws IOException {
+        // given
+        log.recordFailedAttempt(token("alice"));
+        log.recordFailedAttempt(token("bob"));
+        log.clearHistory("alice");
+        // when
+        restart();
+        // then
+        assertThat(log.historyFor("alice")).isEmpty();
+        assertThat(log.historyFor("bob")).hasSize(1);
+    }
+
+    @Test
+    public void restart_clearHistory() throws IOException {
+        // given
+        log.recordFailedAttempt(token("alice"));
+        log.recordFailedAttempt(token("bob"));
+        log.clearHistory();
+        // when
+        restart();
+        // then
+        assertThat(log.historyFor("alice")).isEmpty();
+        assertThat(log.historyFor("bob")).isEmpty();
+    }
+
+    @Test
+    public void restart_resetAttemptCount() throws IOException {
+        // given
+        log.recordFailedAttempt(token("alice"));
+        log.recordFailedAttempt(token("bob"));
+        log.resetAttemptCount();
+        // when
+        restart();
+        // then
+        assertThat(log.attemptsRemaining("alice")).isEqualTo(3);
+        assertThat(log.attemptsRemaining("bob")).isEqualTo(3);
+    }
+
+    @Test
+    public void restart_twice() throws IOException {
+        // given
+        log.recordFailedAttempt(token("alice"));
+        log.clearHistory();
+        log.resetAttemptCount();
+        restart();
+        log.recordFailedAttempt(token("alice"));
+        // when
+        restart();
+        // then
+        assertThat(log.attemptsRemaining("alice")).isEqualTo(2);
+        assertThat(log.historyFor("alice")).hasSize(1);
+    }
+
+    @Test
+    public void restart_afterCompaction_resetAttemptCount() throws IOException {
+        // given
+        log = reopenCompacting();
+        log.recordFailedAttempt(token("alice"));
+        log.recordFailedAttempt(token("alice"));
+        log.resetAttemptCount();
+        fillSegments();
+        // when
+        restart();
+        // then
+        assertThat(Files.exists(directory.resolve("snapshot.log"))).isTrue();
+        assertThat(log.attemptsRemaining("alice")).isEqualTo(3);
+        assertThat(log.historyFor("alice")).hasSize(2);
+    }
+
+    @Test
+    public void restart_afterCompaction_clearHistory_username() throws IOException {
+        // given
+        log = reopenCompacting();
+        log.recordFailedAttempt(token("alice"));
+        log.recordFailedAttempt(token("alice"));
+        log.clearHistory("alice");
+        fillSegments();
+        // when
+        restart();
+        // then
+        assertThat(Files.exists(directory.resolve("snapshot.log"))).isTrue();
+        assertThat(log.attemptsRemaining("alice")).isEqualTo(1);
+        assertThat(log.historyFor("alice")).isEmpty();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void directoryInUse() throws IOException {
+        open();
+    }
+
+    private void restart() throws IOException {
+        log.close();
+        log = open();
+    }
+
+    private FileLoginAttemptLog open() throws IOException {
+        return new FileLoginAttemptLog(directory, 4096, 10, 2);
+    }
+
+    /**
+     * A log with segments of a few records, compacted every 2 segments
+     */
+    private FileLoginAttemptLog reopenCompacting() throws IOException {
+        log.close();
+        return new FileLoginAttemptLog(directory, 128, 10, 2);
+    }
+
+    /**
+     * Rolls enough segments for a compaction of the previous records
+     */
+    private void fillSegments() {
+        for (int i = 0; i < 30; i++) {
+            log.recordSuccessfulAttempt(token("bob"));
+        }
+    }
+
+    private static UsernamePasswordToken token(String username) {
+        return new UsernamePasswordToken(username, "password");
+    }
+}